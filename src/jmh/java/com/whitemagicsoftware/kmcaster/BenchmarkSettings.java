@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import picocli.CommandLine;
+
+/**
+ * Responsible for creating user settings for benchmarks, which construct
+ * components without launching the application.
+ */
+public final class BenchmarkSettings {
+  /**
+   * Parses the given command-line arguments into settings that are not
+   * attached to an application window.
+   *
+   * @param args Command-line options, such as {@code --proportion 100}.
+   * @return The parsed settings, with defaults for unspecified options.
+   */
+  public static Settings create( final String... args ) {
+    final var settings = new Settings();
+    new CommandLine( settings ).parseArgs( args );
+    return settings;
+  }
+
+  /**
+   * Parses the application height into settings.
+   *
+   * @param height The value for the {@code --proportion} option.
+   * @return The parsed settings.
+   */
+  public static Settings create( final int height ) {
+    return create( "--proportion", Integer.toString( height ) );
+  }
+
+  private BenchmarkSettings() {
+  }
+}
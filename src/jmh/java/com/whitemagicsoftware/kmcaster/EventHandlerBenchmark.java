@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.ui.TranslucentPanel;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.InvocationTargetException;
+
+import static com.whitemagicsoftware.kmcaster.ui.FontLoader.initFonts;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static javax.swing.SwingUtilities.invokeAndWait;
+
+/**
+ * Measures the cost of updating the user interface for a switch event,
+ * without a display. The components are laid out offscreen, so painting is
+ * skipped; label text, font fitting, and state changes are measured.
+ * <p>
+ * Events are handled on the event dispatch thread in batches, so that the
+ * cost of handing work to that thread is amortized across the batch.
+ * </p>
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( MICROSECONDS )
+@State( Scope.Benchmark )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class EventHandlerBenchmark {
+  private static final int BATCH = 100;
+
+  @Param( {"KEY_REGULAR", "KEY_SHIFT", "MOUSE_LEFT", "MOUSE_SCROLL_U"} )
+  private String mSwitch;
+
+  private EventHandler mHandler;
+  private long[] mEvents;
+
+  /**
+   * Handles one batch of events, created once to avoid allocations.
+   */
+  private final Runnable mBatch = () -> {
+    for( final var event : mEvents ) {
+      mHandler.switchChanged( event, 0 );
+    }
+  };
+
+  @Setup
+  public void setup() throws Exception {
+    initFonts();
+
+    final var settings = BenchmarkSettings.create();
+    final var images = new HardwareImages( settings );
+    final var hwSwitch = HardwareSwitch.valueOf( mSwitch );
+    final var labelId = SwitchEvent.intern( "a" );
+
+    invokeAndWait( () -> {
+      final var components = new HardwareComponents( images );
+      final var panel = new TranslucentPanel( 0, 0 );
+
+      for( final var s : HardwareSwitch.values() ) {
+        final var component = components.get( s );
+
+        if( component != null ) {
+          panel.add( component );
+        }
+      }
+
+      panel.setSize( panel.getPreferredSize() );
+      panel.doLayout();
+
+      mHandler = new EventHandler( components, settings );
+    } );
+
+    mEvents = new long[ BATCH ];
+
+    for( int i = 0; i < BATCH; i++ ) {
+      // Alternate presses and releases, as typing would.
+      mEvents[ i ] = SwitchEvent.encode( hwSwitch, i % 2 == 0, labelId );
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( BATCH )
+  public void update() throws InterruptedException, InvocationTargetException {
+    invokeAndWait( mBatch );
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static com.whitemagicsoftware.kmcaster.HardwareState.SWITCH_PRESSED;
+import static com.whitemagicsoftware.kmcaster.HardwareState.SWITCH_RELEASED;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Measures the cost of painting a hardware component's rasterized image
+ * into an offscreen buffer, alternating between its pressed and released
+ * states.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( MICROSECONDS )
+@State( Scope.Thread )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class HardwareComponentBenchmark {
+  @Param( {"50", "100", "200"} )
+  private int mHeight;
+
+  @Param( {"KEY_SHIFT", "KEY_REGULAR", "MOUSE_LEFT"} )
+  private String mSwitch;
+
+  private HardwareComponent<HardwareSwitchState> mComponent;
+  private HardwareSwitchState mPressed;
+  private HardwareSwitchState mReleased;
+  private BufferedImage mBuffer;
+  private Graphics2D mGraphics;
+  private boolean mToggle;
+
+  @Setup
+  public void setup() {
+    final var images = new HardwareImages( BenchmarkSettings.create( mHeight ) );
+    final var hwSwitch = HardwareSwitch.valueOf( mSwitch );
+
+    mComponent = new HardwareComponents( images ).get( hwSwitch );
+    mPressed = new HardwareSwitchState( hwSwitch, SWITCH_PRESSED );
+    mReleased = new HardwareSwitchState( hwSwitch, SWITCH_RELEASED );
+
+    final var size = mComponent.getPreferredSize();
+    mComponent.setSize( size );
+    mBuffer = new BufferedImage( size.width, size.height, TYPE_INT_ARGB );
+    mGraphics = mBuffer.createGraphics();
+  }
+
+  @TearDown
+  public void tearDown() {
+    mGraphics.dispose();
+  }
+
+  @Benchmark
+  public BufferedImage paintComponent() {
+    mToggle = !mToggle;
+    mComponent.setState( mToggle ? mPressed : mReleased );
+    mComponent.paintComponent( mGraphics );
+    return mBuffer;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Measures the time to rasterize every key and mouse image, sequentially
+ * and in parallel, at several application heights. The raster cache is
+ * disabled so that every image is rendered.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( MILLISECONDS )
+@State( Scope.Benchmark )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+public class HardwareImagesBenchmark {
+  @Param( {"100", "300", "600"} )
+  private int mHeight;
+
+  /**
+   * Number of threads rasterizing images, zero for one per core.
+   */
+  @Param( {"1", "0"} )
+  private int mThreads;
+
+  private Settings mSettings;
+  private ForkJoinPool mPool;
+
+  @Setup
+  public void setup() {
+    mSettings = BenchmarkSettings.create(
+      "--proportion", Integer.toString( mHeight ), "--cache-size", "0" );
+    mPool = mThreads > 0 ? new ForkJoinPool( mThreads ) : ForkJoinPool.commonPool();
+  }
+
+  @TearDown
+  public void tearDown() {
+    if( mPool != ForkJoinPool.commonPool() ) {
+      mPool.shutdown();
+    }
+  }
+
+  /**
+   * Creates all images from within the pool, so that the parallel stream
+   * uses that pool's threads. The images are released afterwards so that
+   * the next invocation does not reuse them from the shared asset cache.
+   */
+  @Benchmark
+  public HardwareImages rasterize()
+    throws ExecutionException, InterruptedException {
+    final var images = mPool.submit( () -> new HardwareImages( mSettings ) ).get();
+    images.dispose();
+    return images;
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.NoSuchElementException;
+
+import static com.whitemagicsoftware.kmcaster.HardwareSwitch.*;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Compares the former linear, string-based switch lookups against the
+ * precomputed lookup tables and category flags. The "linear" benchmarks
+ * reproduce the original implementations so that the cost before and after
+ * can be reported side-by-side.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( NANOSECONDS )
+@State( Scope.Thread )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class HardwareSwitchBenchmark {
+  /**
+   * Switches that have a single, dedicated label.
+   */
+  private static final HardwareSwitch[] LABELLED = {
+    KEY_SHIFT, KEY_CTRL, KEY_SUPER, KEY_ALT, KEY_REGULAR, MOUSE_EXTRA
+  };
+
+  private HardwareSwitch[] mSwitches;
+  private String[] mNames;
+  private int[] mOrdinals;
+  private int mIndex;
+
+  @Setup
+  public void setup() {
+    mSwitches = HardwareSwitch.values();
+    mNames = new String[ mSwitches.length ];
+    mOrdinals = new int[ mSwitches.length ];
+
+    for( int i = 0; i < mSwitches.length; i++ ) {
+      mNames[ i ] = mSwitches[ i ].toString();
+      mOrdinals[ i ] = mSwitches[ i ].ordinal();
+    }
+  }
+
+  @Benchmark
+  public HardwareSwitch valueFromLinear() {
+    return linearValueFrom( nextName() );
+  }
+
+  @Benchmark
+  public HardwareSwitch valueFromOrdinal() {
+    return HardwareSwitch.valueFrom( nextOrdinal() );
+  }
+
+  @Benchmark
+  public void categoryPrefix( final Blackhole bh ) {
+    final var hwSwitch = nextSwitch();
+    bh.consume( hwSwitch.name().startsWith( "KEY" ) );
+    bh.consume( hwSwitch.name().startsWith( "MOUSE" ) );
+    bh.consume( hwSwitch.name().startsWith( "MOUSE_SCROLL" ) );
+  }
+
+  @Benchmark
+  public void categoryFlags( final Blackhole bh ) {
+    final var hwSwitch = nextSwitch();
+    bh.consume( hwSwitch.isKeyboard() );
+    bh.consume( hwSwitch.isMouse() );
+    bh.consume( hwSwitch.isScroll() );
+  }
+
+  @Benchmark
+  public LabelConfig labelConfigLinear() {
+    return linearLabelConfig( nextLabelled() );
+  }
+
+  @Benchmark
+  public LabelConfig labelConfigTable() {
+    return LabelConfig.valueFrom( nextLabelled() );
+  }
+
+  /**
+   * Resolves a switch by name and classifies it, as event dispatch did
+   * before the lookup tables were introduced.
+   */
+  @Benchmark
+  public void dispatchLinear( final Blackhole bh ) {
+    final var hwSwitch = linearValueFrom( nextName() );
+    bh.consume( hwSwitch.name().startsWith( "KEY" ) );
+    bh.consume( hwSwitch.name().startsWith( "MOUSE_SCROLL" ) );
+  }
+
+  /**
+   * Resolves a switch by the ordinal packed into its event and classifies
+   * it using the category flags.
+   */
+  @Benchmark
+  public void dispatchTable( final Blackhole bh ) {
+    final var hwSwitch = HardwareSwitch.valueFrom( nextOrdinal() );
+    bh.consume( hwSwitch.isKeyboard() );
+    bh.consume( hwSwitch.isScroll() );
+  }
+
+  private String nextName() {
+    return mNames[ nextIndex( mNames.length ) ];
+  }
+
+  private int nextOrdinal() {
+    return mOrdinals[ nextIndex( mOrdinals.length ) ];
+  }
+
+  private HardwareSwitch nextSwitch() {
+    return mSwitches[ nextIndex( mSwitches.length ) ];
+  }
+
+  private HardwareSwitch nextLabelled() {
+    return LABELLED[ nextIndex( LABELLED.length ) ];
+  }
+
+  private int nextIndex( final int length ) {
+    final var index = mIndex++ % length;
+    return index < 0 ? -index : index;
+  }
+
+  private static HardwareSwitch linearValueFrom( final String name ) {
+    for( final var b : HardwareSwitch.values() ) {
+      if( b.isName( name ) ) {
+        return b;
+      }
+    }
+
+    throw new NoSuchElementException( name );
+  }
+
+  private static LabelConfig linearLabelConfig( final HardwareSwitch hwSwitch ) {
+    for( final var lc : LabelConfig.values() ) {
+      final var os = lc.getHardwareSwitch();
+
+      if( os.isPresent() && os.get() == hwSwitch ) {
+        return lc;
+      }
+    }
+
+    throw new NoSuchElementException( hwSwitch.toTitleCase() );
+  }
+}
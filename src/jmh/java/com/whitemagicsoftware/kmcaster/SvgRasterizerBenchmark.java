@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.kitfox.svg.SVGDiagram;
+import com.kitfox.svg.SVGException;
+import com.whitemagicsoftware.kmcaster.ui.DimensionTuple;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Measures the cost of rasterizing vector graphics at the application
+ * heights given by the {@code --proportion} option.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( MILLISECONDS )
+@State( Scope.Thread )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class SvgRasterizerBenchmark {
+  @Param( {"50", "100", "200", "400"} )
+  private int mHeight;
+
+  @Param( {"/images/key/up/shift.svg", "/images/mouse/0.svg"} )
+  private String mPath;
+
+  private final SvgRasterizer mRasterizer = new SvgRasterizer();
+  private SVGDiagram mDiagram;
+  private DimensionTuple mScale;
+
+  @Setup
+  public void setup() {
+    final var settings = BenchmarkSettings.create( mHeight );
+
+    mDiagram = mRasterizer.loadDiagram( mPath );
+    mScale = mRasterizer.calculateScale(
+      mDiagram, settings.createAppDimensions() );
+  }
+
+  @Benchmark
+  public BufferedImage rasterize() throws SVGException {
+    return mRasterizer.rasterize( mDiagram, mScale );
+  }
+}
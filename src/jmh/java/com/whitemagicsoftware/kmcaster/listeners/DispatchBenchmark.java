@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.listeners;
+
+import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
+import com.whitemagicsoftware.kmcaster.BenchmarkSettings;
+import com.whitemagicsoftware.kmcaster.SwitchEvent;
+import org.openjdk.jmh.annotations.*;
+
+import static com.github.kwhat.jnativehook.NativeInputEvent.SHIFT_L_MASK;
+import static com.github.kwhat.jnativehook.keyboard.NativeKeyEvent.*;
+import static com.whitemagicsoftware.kmcaster.HardwareSwitch.KEY_REGULAR;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Measures the cost of turning native keyboard events into switch events,
+ * and of notifying listeners, up to (but excluding) the user interface.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( NANOSECONDS )
+@State( Scope.Thread )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class DispatchBenchmark {
+  /**
+   * X11 key symbol for the left shift key.
+   */
+  private static final int RAW_SHIFT_L = 0xFFE1;
+
+  /**
+   * Exposes the protected firing method to the benchmarks.
+   */
+  private static final class Dispatcher extends PropertyDispatcher {
+    void fireRegular( final int labelId ) {
+      fire( KEY_REGULAR, true, labelId );
+    }
+  }
+
+  private KeyboardListener mKeyboard;
+  private Dispatcher mDispatcher;
+  private NativeKeyEvent mTyped;
+  private NativeKeyEvent mShiftPressed;
+  private NativeKeyEvent mShiftReleased;
+  private int mLabelId;
+
+  /**
+   * Accumulates events so that dispatching cannot be eliminated.
+   */
+  private long mSink;
+
+  @Setup
+  public void setup() {
+    final SwitchListener listener = ( event, nanos ) -> mSink ^= event;
+
+    mKeyboard = new KeyboardListener( BenchmarkSettings.create() );
+    mKeyboard.addSwitchListener( listener );
+
+    mDispatcher = new Dispatcher();
+    mDispatcher.addSwitchListener( listener );
+
+    mTyped = new NativeKeyEvent(
+      NATIVE_KEY_TYPED, 0, 'a', VC_UNDEFINED, 'a', KEY_LOCATION_UNKNOWN );
+    mShiftPressed = new NativeKeyEvent(
+      NATIVE_KEY_PRESSED, SHIFT_L_MASK, RAW_SHIFT_L, VC_UNDEFINED,
+      CHAR_UNDEFINED, KEY_LOCATION_STANDARD );
+    mShiftReleased = new NativeKeyEvent(
+      NATIVE_KEY_RELEASED, 0, RAW_SHIFT_L, VC_UNDEFINED,
+      CHAR_UNDEFINED, KEY_LOCATION_STANDARD );
+    mLabelId = SwitchEvent.intern( "a" );
+  }
+
+  /**
+   * Regular key typed, which fires a press and a release.
+   */
+  @Benchmark
+  public long keyTyped() {
+    mKeyboard.nativeKeyTyped( mTyped );
+    return mSink;
+  }
+
+  /**
+   * Modifier key pressed then released, which fires on each state change.
+   */
+  @Benchmark
+  public long modifierPressRelease() {
+    mKeyboard.nativeKeyPressed( mShiftPressed );
+    mKeyboard.nativeKeyReleased( mShiftReleased );
+    return mSink;
+  }
+
+  @Benchmark
+  public long fire() {
+    mDispatcher.fireRegular( mLabelId );
+    return mSink;
+  }
+}
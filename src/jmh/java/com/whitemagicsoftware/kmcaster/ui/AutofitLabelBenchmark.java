@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.ui;
+
+import com.whitemagicsoftware.kmcaster.BenchmarkSettings;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+
+import static com.whitemagicsoftware.kmcaster.ui.FontLoader.initFonts;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Measures the cost of finding the largest font that fits a label's text
+ * within its bounds, which happens whenever a key label changes. Fitted
+ * fonts are remembered, so this measures the steady state, where the same
+ * text is fitted to the same bounds again.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( MICROSECONDS )
+@State( Scope.Thread )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class AutofitLabelBenchmark {
+  @Param( {"50", "100", "200"} )
+  private int mHeight;
+
+  @Param( {"a", "Esc", "Shift", "Backspace"} )
+  private String mText;
+
+  private AutofitLabel mLabel;
+
+  @Setup
+  public void setup() throws Exception {
+    initFonts();
+
+    final var font = BenchmarkSettings.create( mHeight ).createFont();
+
+    mLabel = new AutofitLabel( mText, font );
+    mLabel.setSize( mHeight * 2, mHeight / 2 );
+  }
+
+  @Benchmark
+  public Font computeScaledFont() {
+    return mLabel.computeScaledFontNew();
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.ui;
+
+import com.whitemagicsoftware.kmcaster.BenchmarkSettings;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static com.whitemagicsoftware.kmcaster.ui.FontLoader.initFonts;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Measures the cost of changing a label's text, fitting it, and painting
+ * it, with and without rendered text being cached. The texts alternate, so
+ * every change after the first two is a cache hit.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( MICROSECONDS )
+@State( Scope.Thread )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class LabelCacheBenchmark {
+  @Param( {"50", "100", "200"} )
+  private int mHeight;
+
+  @Param( {"0", "8"} )
+  private int mCacheSize;
+
+  private final String[] mTexts = {"Esc", "Shift"};
+
+  private AutofitLabel mLabel;
+  private BufferedImage mBuffer;
+  private Graphics2D mGraphics;
+  private int mIndex;
+
+  @Setup
+  public void setup() throws Exception {
+    initFonts();
+
+    final var font = BenchmarkSettings.create( mHeight ).createFont();
+    final var parent = new JPanel( null );
+    final var cache = new LabelCache( mCacheSize * 1024L * 1024L );
+
+    parent.setSize( mHeight * 2, mHeight );
+    mLabel = new AutofitLabel( mTexts[ 0 ], font, cache );
+    mLabel.setForeground( Color.WHITE );
+    parent.add( mLabel );
+
+    mBuffer = new BufferedImage( mHeight * 2, mHeight, TYPE_INT_ARGB_PRE );
+    mGraphics = mBuffer.createGraphics();
+  }
+
+  @TearDown
+  public void tearDown() {
+    mGraphics.dispose();
+  }
+
+  @Benchmark
+  public BufferedImage transformAndPaint() {
+    mIndex ^= 1;
+    mLabel.setText( mTexts[ mIndex ] );
+    mLabel.transform();
+    mLabel.paint( mGraphics );
+    return mBuffer;
+  }
+}
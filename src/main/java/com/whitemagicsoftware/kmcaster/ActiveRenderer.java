@@ -0,0 +1,261 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.ui.RenderSnapshot;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.whitemagicsoftware.kmcaster.LatencyStats.Stage.UPDATE_TO_PAINT;
+import static java.awt.Toolkit.getDefaultToolkit;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.swing.SwingUtilities.convertPoint;
+import static javax.swing.SwingUtilities.invokeLater;
+
+/**
+ * Responsible for drawing the overlay from a dedicated thread, rather than
+ * through Swing's repaint manager. The event dispatch thread captures a
+ * {@link RenderSnapshot} whenever the switch states change; the rendering
+ * thread draws the latest snapshot into the window's buffer strategy at a
+ * fixed cadence, so that a busy event dispatch thread does not hold up
+ * changes that were already captured.
+ */
+final class ActiveRenderer {
+  private final Window mWindow;
+  private final Container mPanel;
+
+  /**
+   * Time between checks for a new snapshot, in nanoseconds.
+   */
+  private final long mFrameNanos;
+
+  /**
+   * Most recently captured snapshot, drawn on the next frame.
+   */
+  private volatile RenderSnapshot mSnapshot;
+
+  /**
+   * Set when the window's contents must be drawn again, even if the
+   * snapshot has not changed.
+   */
+  private volatile boolean mInvalid;
+
+  /**
+   * Set while no input is expected, so that the rendering thread waits for
+   * a snapshot instead of checking once per frame.
+   */
+  private volatile boolean mIdle;
+
+  private Thread mThread;
+
+  /**
+   * Prepares to render the hardware components within the given panel.
+   *
+   * @param window The window to draw upon.
+   * @param panel  Contains the hardware components to draw.
+   * @param maxFps The maximum frame rate, must be greater than zero.
+   */
+  ActiveRenderer( final Window window, final Container panel,
+                  final int maxFps ) {
+    assert maxFps > 0;
+
+    mWindow = window;
+    mPanel = panel;
+    mFrameNanos = SECONDS.toNanos( 1 ) / maxFps;
+  }
+
+  /**
+   * Creates the window's buffer strategy and starts the rendering thread.
+   * This must be called on the event dispatch thread after the window is
+   * displayable.
+   *
+   * @return {@code false} if the window cannot be drawn using a buffer
+   * strategy, in which case Swing must continue painting it.
+   */
+  boolean start() {
+    try {
+      mWindow.createBufferStrategy( 2 );
+    } catch( final IllegalStateException | IllegalArgumentException ex ) {
+      System.err.println( "Active rendering unavailable: " + ex.getMessage() );
+      return false;
+    }
+
+    // Swing must not copy its own back buffer over the rendered frames.
+    RepaintManager.currentManager( mWindow ).setDoubleBufferingEnabled( false );
+
+    publish( 0, false );
+
+    mThread = new Thread( this::run, "render" );
+    mThread.setDaemon( true );
+    mThread.start();
+
+    return true;
+  }
+
+  /**
+   * Captures the current switch states for the rendering thread to draw.
+   * This must be called on the event dispatch thread.
+   *
+   * @param nanos     When the change began, or zero if not being measured.
+   * @param immediate {@code true} to draw without waiting for the next
+   *                  frame, such as for key presses; always the case while
+   *                  idle.
+   */
+  void publish( final long nanos, final boolean immediate ) {
+    mSnapshot = capture( nanos );
+    mInvalid = true;
+
+    final var thread = mThread;
+
+    if( (immediate || mIdle) && thread != null ) {
+      LockSupport.unpark( thread );
+    }
+  }
+
+  /**
+   * Stops or resumes checking for changes once per frame. While idle, the
+   * rendering thread sleeps until the next snapshot is published. This may
+   * be called from any thread.
+   *
+   * @param idle {@code true} to sleep until the next snapshot.
+   */
+  void setIdle( final boolean idle ) {
+    mIdle = idle;
+
+    final var thread = mThread;
+
+    if( !idle && thread != null ) {
+      LockSupport.unpark( thread );
+    }
+  }
+
+  /**
+   * Describes every visible hardware component and label as copies of
+   * images onto the window.
+   *
+   * @param nanos When the change began, or zero if not being measured.
+   * @return A snapshot that is safe to draw from any thread.
+   */
+  private RenderSnapshot capture( final long nanos ) {
+    final var blits = new ArrayList<RenderSnapshot.Blit>();
+    final var gc = mWindow.getGraphicsConfiguration();
+    final var scale = gc == null ? 1 : gc.getDefaultTransform().getScaleX();
+
+    for( final var child : mPanel.getComponents() ) {
+      if( child.isVisible() && child instanceof HardwareComponent ) {
+        final var p = convertPoint( mPanel, child.getX(), child.getY(), mWindow );
+
+        ((HardwareComponent<?>) child).snapshot( blits, p.x, p.y, scale );
+      }
+    }
+
+    return new RenderSnapshot(
+      blits, mWindow.getWidth(), mWindow.getHeight(), nanos );
+  }
+
+  /**
+   * Draws the latest snapshot whenever it changes or the window's contents
+   * are lost, checking once per frame.
+   */
+  private void run() {
+    final var strategy = mWindow.getBufferStrategy();
+    RenderSnapshot shown = null;
+
+    try {
+      while( true ) {
+        if( mInvalid || strategy.contentsLost() ) {
+          mInvalid = false;
+
+          final var snapshot = mSnapshot;
+          present( strategy, snapshot );
+
+          if( snapshot != shown ) {
+            shown = snapshot;
+            presented( snapshot );
+          }
+        }
+
+        if( mIdle ) {
+          LockSupport.park( this );
+        }
+        else {
+          LockSupport.parkNanos( this, mFrameNanos );
+        }
+      }
+    } catch( final IllegalStateException ex ) {
+      // The window was disposed, so there is nothing left to draw upon.
+    }
+  }
+
+  /**
+   * Draws a snapshot into the back buffer, then shows it, repeating until
+   * the window's contents were not lost while drawing.
+   *
+   * @param strategy The window's buffers.
+   * @param snapshot The switch states to draw.
+   */
+  private void present(
+    final BufferStrategy strategy, final RenderSnapshot snapshot ) {
+    do {
+      do {
+        final var g = (Graphics2D) strategy.getDrawGraphics();
+
+        try {
+          snapshot.draw( g );
+        } finally {
+          g.dispose();
+        }
+      } while( strategy.contentsRestored() );
+
+      strategy.show();
+    } while( strategy.contentsLost() );
+
+    getDefaultToolkit().sync();
+  }
+
+  /**
+   * Records how long the change shown by the given snapshot took to appear.
+   * Snapshots replaced before they were drawn are not measured.
+   *
+   * @param snapshot The switch states that were drawn.
+   */
+  private void presented( final RenderSnapshot snapshot ) {
+    final var nanos = snapshot.getNanos();
+
+    if( nanos != 0 ) {
+      final var elapsed = System.nanoTime() - nanos;
+
+      // Latencies are recorded on the event dispatch thread only.
+      invokeLater( () -> LatencyStats.record( UPDATE_TO_PAINT, elapsed ) );
+    }
+  }
+}
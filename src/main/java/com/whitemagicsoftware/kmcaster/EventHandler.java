@@ -27,32 +27,46 @@
  */
 package com.whitemagicsoftware.kmcaster;
 
+import com.whitemagicsoftware.kmcaster.listeners.SwitchListener;
 import com.whitemagicsoftware.kmcaster.ui.AutofitLabel;
+import com.whitemagicsoftware.kmcaster.ui.LabelCache;
+import com.whitemagicsoftware.kmcaster.ui.RenderScheduler;
 import com.whitemagicsoftware.kmcaster.ui.ResetTimer;
+import com.whitemagicsoftware.kmcaster.ui.TranslucentPanel;
 import com.whitemagicsoftware.kmcaster.util.ConsecutiveEventCounter;
+import com.whitemagicsoftware.kmcaster.util.EventRingBuffer;
+import com.whitemagicsoftware.kmcaster.util.EventRingBuffer.EventConsumer;
 
+import javax.swing.*;
 import java.awt.*;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import static com.whitemagicsoftware.kmcaster.HardwareState.*;
 import static com.whitemagicsoftware.kmcaster.HardwareSwitch.*;
 import static com.whitemagicsoftware.kmcaster.LabelConfig.*;
+import static com.whitemagicsoftware.kmcaster.LatencyStats.Stage.FIRE_TO_UPDATE;
+import static com.whitemagicsoftware.kmcaster.LatencyStats.Stage.UPDATE_TO_PAINT;
+import static com.whitemagicsoftware.kmcaster.SwitchEvent.NO_LABEL;
 import static com.whitemagicsoftware.kmcaster.ui.Constants.*;
-import static java.awt.Toolkit.getDefaultToolkit;
-import static javax.swing.RepaintManager.currentManager;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
 import static javax.swing.SwingUtilities.invokeLater;
+import static javax.swing.SwingUtilities.isEventDispatchThread;
 
 /**
  * Responsible for controlling the application state between the events
  * and the view.
  */
-public final class EventHandler implements PropertyChangeListener {
+public final class EventHandler implements SwitchListener {
 
   /**
    * Maps key pressed states to key cap title colours.
@@ -68,22 +82,93 @@ public final class EventHandler implements PropertyChangeListener {
   public static final HardwareSwitchState MOUSE_RELEASED =
     new HardwareSwitchState( MOUSE_EXTRA, SWITCH_RELEASED );
 
-  private final HardwareImages mHardwareImages;
+  /**
+   * Maximum number of events that can be queued between the native hook
+   * thread and the event dispatch thread before the hook thread must wait.
+   */
+  private static final int EVENT_BUFFER_CAPACITY = 1024;
+
+  /**
+   * Number of times the native hook thread retries a full queue before it
+   * starts sleeping between retries.
+   */
+  private static final int FULL_SPIN_LIMIT = 100;
+
+  /**
+   * Time that the native hook thread sleeps between retries once spinning
+   * has not freed space in the queue, such as when the event dispatch
+   * thread is busy for a long time.
+   */
+  private static final long FULL_PARK_NANOS = MICROSECONDS.toNanos( 200 );
+
+  private final HardwareComponents mComponents;
   private final AutofitLabel[] mLabels = new AutofitLabel[ LabelConfig.size() ];
   private final Map<HardwareSwitch, ResetTimer> mTimers = new HashMap<>();
   private final Deque<HardwareSwitch> mMouseActions = new LinkedList<>();
   private final ConsecutiveEventCounter<String> mKeyCounter;
+  private final int mKeyCountLimit;
+  private final RenderScheduler mScheduler;
+
+  /**
+   * Draws changes from a dedicated thread, if not {@code null}, in which
+   * case the scheduler is not used.
+   */
+  private ActiveRenderer mRenderer;
+
+  /**
+   * Rendered label text shared by all labels.
+   */
+  private final LabelCache mLabelCache;
+
+  /**
+   * Queues events from the native hook thread for the event dispatch thread.
+   */
+  private final EventRingBuffer mEvents =
+    new EventRingBuffer( EVENT_BUFFER_CAPACITY );
+
+  /**
+   * Set when a drain of {@link #mEvents} has been queued on the event
+   * dispatch thread, but has not yet started.
+   */
+  private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+
+  /**
+   * Created once to avoid allocating a new {@link Runnable} per event.
+   */
+  private final Runnable mDrain = this::drain;
+
+  /**
+   * Created once to avoid allocating a new {@link EventConsumer} per drain.
+   */
+  private final EventConsumer mUpdate = this::update;
+
+  /**
+   * Time that the event being handled by {@link #update(long, long)} was
+   * fired, or zero when latencies are not being recorded.
+   */
+  private long mUpdateNanos;
+
+  /**
+   * Earliest update time among components waiting for the next frame, or
+   * zero if there are none being measured.
+   */
+  private long mPendingNanos;
 
   public EventHandler(
-    final HardwareImages hardwareImages, final Settings userSettings ) {
-    mHardwareImages = hardwareImages;
-    mKeyCounter = new ConsecutiveEventCounter<>( userSettings.getKeyCount() );
+    final HardwareComponents components, final Settings userSettings ) {
+    mComponents = components;
+    mKeyCountLimit = userSettings.getKeyCount();
+    mKeyCounter = new ConsecutiveEventCounter<>( mKeyCountLimit );
+    mScheduler = new RenderScheduler( userSettings.getMaxFps() );
+    mScheduler.setFlushListener( this::framePainted );
+    mLabelCache = new LabelCache( userSettings.getLabelCacheBytes() );
 
     final var keyColour = KEY_COLOURS.get( SWITCH_PRESSED );
     final var font = userSettings.createFont();
 
     for( final var config : LabelConfig.values() ) {
-      final var label = new AutofitLabel( config.toTitleCase(), font );
+      final var label =
+        new AutofitLabel( config.toTitleCase(), font, mLabelCache );
 
       label.setVerticalAlignment( config.getVerticalAlign() );
       label.setHorizontalAlignment( config.getHorizontalAlign() );
@@ -94,8 +179,8 @@ public final class EventHandler implements PropertyChangeListener {
       final var hwSwitch = config.getHardwareSwitch();
 
       hwSwitch.flatMap(
-        s -> Optional.ofNullable(mHardwareImages.get(s)))
-        .orElseGet(() -> mHardwareImages.get( KEY_REGULAR ))
+        s -> Optional.ofNullable(mComponents.get(s)))
+        .orElseGet(() -> mComponents.get( KEY_REGULAR ))
         .add(label);
     }
 
@@ -106,38 +191,213 @@ public final class EventHandler implements PropertyChangeListener {
   }
 
   /**
-   * Called when a hardware switch has changed state.
+   * Creates detached copies of the labels, one for each way that a label is
+   * known to appear: modifier titles in both colours, the given key texts
+   * (split into superscript and main parts where applicable), and the key
+   * press tallies. Preparing the copies prepares the labels, because they
+   * share caches. This must be called on the event dispatch thread, after
+   * the window has been laid out.
    *
-   * @param e Contains the identifier for the switch, its previous value,
-   *          and its new value.
+   * @param texts The text of the known regular keys.
+   * @return Labels to prepare in advance of their first use.
+   */
+  public List<AutofitLabel> createLabelTwins( final Collection<String> texts ) {
+    final var twins = new ArrayList<AutofitLabel>();
+    final var pressed = KEY_COLOURS.get( SWITCH_PRESSED );
+
+    for( final var config : LabelConfig.values() ) {
+      config.getHardwareSwitch()
+        .filter( HardwareSwitch::isModifier )
+        .filter( hwSwitch -> mComponents.get( hwSwitch ) != null )
+        .ifPresent( hwSwitch -> {
+          for( final var colour : KEY_COLOURS.values() ) {
+            twins.add( getLabel( config ).createTwin(
+              hwSwitch.toTitleCase(), colour, 1 ) );
+          }
+        } );
+    }
+
+    final var regular = getLabel( LABEL_REGULAR );
+    final var main = getLabel( LABEL_REGULAR_NUM_MAIN );
+    final var sup = getLabel( LABEL_REGULAR_NUM_SUPERSCRIPT );
+    final var tally = getLabel( LABEL_REGULAR_COUNTER );
+
+    // Mirrors the layout performed by updateKeyboardLabel.
+    for( final var text : texts ) {
+      final var index = text.indexOf( ' ' );
+
+      if( index > 0 ) {
+        final var supText = text.substring( 0, index );
+        final var mainText = text.substring( index + 1 );
+
+        twins.add( sup.createTwin( supText, pressed, .6f ) );
+        twins.add( main.createTwin( mainText, pressed, .8f ) );
+      }
+      else {
+        twins.add( regular.createTwin( text, pressed, 1 ) );
+      }
+    }
+
+    final var counter = new ConsecutiveEventCounter<String>( mKeyCountLimit );
+    final var tallies = new LinkedHashSet<String>();
+
+    while( counter.apply( "" ) && tallies.add( counter.toString() ) ) {
+      twins.add( tally.createTwin( counter.toString(), pressed, .25f ) );
+    }
+
+    return twins;
+  }
+
+  /**
+   * Called when a hardware switch has changed state. Events raised on the
+   * native hook thread are queued and handled in batches on Swing's event
+   * dispatch thread; events raised on the event dispatch thread (such as
+   * those fired while initializing) are handled immediately.
+   *
+   * @param e     Contains the switch, its new state, and its label.
+   * @param nanos When the event was fired, used to measure latency.
    */
   @Override
-  public void propertyChange( final PropertyChangeEvent e ) {
-    invokeLater(
-      () -> {
-        update( e );
+  public void switchChanged( final long e, final long nanos ) {
+    if( isEventDispatchThread() ) {
+      // Preserve the order of any events queued before this one.
+      drain();
+      update( e, nanos );
+      return;
+    }
 
-        // Prevent collapsing multiple paint events.
-        getDefaultToolkit().sync();
+    // Events are never dropped, because a lost release would leave a key
+    // drawn as held; wait for the event dispatch thread to drain the queue.
+    for( int attempt = 0; !mEvents.offer( e, nanos ); attempt++ ) {
+      if( attempt < FULL_SPIN_LIMIT ) {
+        Thread.onSpinWait();
       }
-    );
+      else {
+        LockSupport.parkNanos( this, FULL_PARK_NANOS );
+      }
+    }
+
+    if( mDrainScheduled.compareAndSet( false, true ) ) {
+      invokeLater( mDrain );
+    }
+  }
+
+  /**
+   * Updates the user interface for every queued event in a single pass. This
+   * must be invoked from Swing's event dispatch thread.
+   */
+  private void drain() {
+    // Clear the flag before draining so that an event published after the
+    // drain starts schedules another drain, rather than being stranded.
+    mDrainScheduled.set( false );
+    mEvents.drain( mUpdate );
+  }
+
+  /**
+   * Returns the buffer between the native hook thread and the event dispatch
+   * thread, which can be queried for queue depth and batch size counters.
+   *
+   * @return The event queue.
+   */
+  public EventRingBuffer getEventBuffer() {
+    return mEvents;
+  }
+
+  /**
+   * Provides access to the rendered label text, for reporting its hit
+   * ratio and memory use.
+   *
+   * @return The label cache.
+   */
+  public LabelCache getLabelCache() {
+    return mLabelCache;
+  }
+
+  /**
+   * Sets the ancestor that paints all changed components together, such as
+   * a panel that composites the overlay offscreen.
+   *
+   * @param root The ancestor of all hardware components.
+   */
+  public void setPaintRoot( final TranslucentPanel root ) {
+    mScheduler.setPaintRoot( root );
+  }
+
+  /**
+   * Switches every component to the given images, keeping the held keys and
+   * mouse actions. This must be called on the event dispatch thread.
+   *
+   * @param images The images to show.
+   */
+  public void showImages( final HardwareImages images ) {
+    mComponents.show( images );
+
+    // The mouse draws a combination of actions rather than its state image.
+    showMouseActions();
+  }
+
+  /**
+   * Scales every label by the given ratio, after the hardware components
+   * have been resized. This must be called on the event dispatch thread.
+   *
+   * @param ratio The new application height relative to the old height.
+   */
+  public void rescaleLabels( final double ratio ) {
+    for( final var label : mLabels ) {
+      label.rescale( ratio );
+    }
+  }
+
+  /**
+   * Discards rendered labels and composed mouse images, which are recreated
+   * when next shown. This must be called on the event dispatch thread.
+   */
+  public void releaseCaches() {
+    mLabelCache.clear();
+    mComponents.getMouseCombinations().clear();
+  }
+
+  /**
+   * Hands drawing over to a rendering thread, which draws a snapshot of the
+   * switch states captured after each change.
+   *
+   * @param renderer The started renderer.
+   */
+  void setRenderer( final ActiveRenderer renderer ) {
+    mRenderer = renderer;
+  }
+
+  /**
+   * Records how long the event waited to be handled, then updates the user
+   * interface. This must be invoked from Swing's event dispatch thread.
+   *
+   * @param e     Contains the switch, its new state, and its label.
+   * @param nanos When the event was fired, or zero if not being measured.
+   */
+  private void update( final long e, final long nanos ) {
+    if( nanos != 0 ) {
+      final var now = System.nanoTime();
+      LatencyStats.record( FIRE_TO_UPDATE, now - nanos );
+      mUpdateNanos = now;
+    }
+
+    try {
+      update( e );
+    } finally {
+      mUpdateNanos = 0;
+    }
   }
 
   /**
    * Called to update the user interface after a keyboard or mouse event
    * has fired. This must be invoked from Swing's event dispatch thread.
    *
-   * @param e Contains the identifier for the switch, its previous value,
-   *          and its new value.
+   * @param e Contains the switch, its new state, and its label.
    */
-  private void update( final PropertyChangeEvent e ) {
-    final var switchName = e.getPropertyName();
-    final var oldValue = e.getOldValue().toString();
-    final var newValue = e.getNewValue().toString();
-    final var switchValue = newValue.isEmpty() ? oldValue : newValue;
-
-    final var hwSwitch = HardwareSwitch.valueFrom( switchName );
-    final var hwState = HardwareState.valueFrom( newValue );
+  private void update( final long e ) {
+    final var hwSwitch = SwitchEvent.getSwitch( e );
+    final var hwState = SwitchEvent.getState( e );
+    final var switchValue = SwitchEvent.getLabel( e );
 
     final var switchState = new HardwareSwitchState(
       hwSwitch, hwState, switchValue );
@@ -171,14 +431,9 @@ public final class EventHandler implements PropertyChangeListener {
         // after a few moments of inactivity.
         if( hwSwitch.isScroll() ) {
           timer.addActionListener(
-            ( action ) -> {
-              final var source = e.getSource();
-              final var name = e.getPropertyName();
-              final var event = new PropertyChangeEvent(
-                source, name, true, false );
-
-              update( event );
-            }
+            ( action ) -> update(
+              SwitchEvent.encode( hwSwitch, false, NO_LABEL )
+            )
           );
         }
       }
@@ -254,6 +509,8 @@ public final class EventHandler implements PropertyChangeListener {
         }
       }
     }
+
+    schedulePaint( getHardwareComponent( state ), hwState == SWITCH_PRESSED );
   }
 
   private void updateMouseStatus( final HardwareSwitchState switchState ) {
@@ -274,15 +531,71 @@ public final class EventHandler implements PropertyChangeListener {
       }
     }
 
-    final var component = getHardwareComponent( MOUSE_RELEASED );
-    final var repaintManager = currentManager( component );
+    final var component = showMouseActions();
 
-    component.setState( new HardwareSwitchState( hwSwitch, SWITCH_RELEASED ) );
-    repaintManager.paintDirtyRegions();
+    // Scrolling happens in bursts, so coalesce it along with releases.
+    schedulePaint(
+      component, hwState == SWITCH_PRESSED && !hwSwitch.isScroll() );
+  }
+
+  /**
+   * Shows every mouse action still being held, using a single image composed
+   * for the combination; when there are none, the mouse is released.
+   *
+   * @return The component that draws the mouse.
+   */
+  private HardwareComponent<HardwareSwitchState> showMouseActions() {
+    final var component = getHardwareComponent( MOUSE_RELEASED );
+    var held = 0;
 
     for( final var action : mMouseActions ) {
-      component.setState( new HardwareSwitchState( action, SWITCH_PRESSED ) );
-      repaintManager.paintDirtyRegions();
+      held |= MouseCombinations.mask( action );
+    }
+
+    component.show( mComponents.getMouseCombinations().get( held ) );
+
+    return component;
+  }
+
+  /**
+   * Paints the given component. Presses are painted immediately so that they
+   * appear as soon as possible; all other changes are coalesced and painted
+   * on the next frame. When rendering actively, the switch states are
+   * captured for the rendering thread instead.
+   *
+   * @param component The component that has changed.
+   * @param immediate {@code true} to bypass the frame rate limit.
+   */
+  private void schedulePaint(
+    final JComponent component, final boolean immediate ) {
+    final var nanos = mUpdateNanos;
+
+    if( mRenderer != null ) {
+      mRenderer.publish( nanos, immediate );
+    }
+    else if( immediate ) {
+      mScheduler.paintNow( component );
+
+      if( nanos != 0 ) {
+        LatencyStats.record( UPDATE_TO_PAINT, System.nanoTime() - nanos );
+      }
+    }
+    else {
+      mScheduler.markDirty( component );
+
+      if( nanos != 0 && (mPendingNanos == 0 || nanos < mPendingNanos) ) {
+        mPendingNanos = nanos;
+      }
+    }
+  }
+
+  /**
+   * Records the latency of the oldest update painted on the current frame.
+   */
+  private void framePainted() {
+    if( mPendingNanos != 0 ) {
+      LatencyStats.record( UPDATE_TO_PAINT, System.nanoTime() - mPendingNanos );
+      mPendingNanos = 0;
     }
   }
 
@@ -302,9 +615,9 @@ public final class EventHandler implements PropertyChangeListener {
     label.setVisible( true );
   }
 
-  private HardwareComponent<HardwareSwitchState, Image> getHardwareComponent(
+  private HardwareComponent<HardwareSwitchState> getHardwareComponent(
     final HardwareSwitchState state ) {
-    return mHardwareImages.get( state.getHardwareSwitch() );
+    return mComponents.get( state.getHardwareSwitch() );
   }
 
   private void putTimers( final HardwareSwitch[] hwSwitches, final int delay ) {
@@ -27,40 +27,50 @@
  */
 package com.whitemagicsoftware.kmcaster;
 
+import com.whitemagicsoftware.kmcaster.ui.AutofitLabel;
+import com.whitemagicsoftware.kmcaster.ui.RenderSnapshot;
+
 import javax.swing.*;
 import java.awt.*;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import static com.whitemagicsoftware.kmcaster.SvgRasterizer.RENDERING_HINTS;
+import static com.whitemagicsoftware.kmcaster.ui.Constants.RENDERING_HINTS;
 
 /**
  * Responsible for drawing an image based on a state; the state can be
- * changed at any time.
+ * changed at any time. Each image is a {@link Sprite} drawn from an atlas
+ * shared with the other components.
  *
  * @param <S> The type of state associated with an image.
  */
-public final class HardwareComponent
-  <S extends HardwareSwitchState, I extends Image> extends JComponent {
+public final class HardwareComponent<S extends HardwareSwitchState>
+  extends JComponent {
 
-  private final Map<S, I> mStateImages = new HashMap<>();
+  private final Map<S, Sprite> mStateImages = new HashMap<>();
 
   /**
-   * State that corresponds with the {@link Image} to paint.
+   * State that corresponds with the {@link Sprite} to paint.
    */
   private S mState;
 
+  /**
+   * Image to paint, which is usually the image for {@link #mState}.
+   */
+  private Sprite mSprite;
+
   /**
    * Available space on the image for drawing.
    */
-  private final Insets mInsets;
+  private Insets mInsets;
 
   private Dimension mPreferredSize;
 
   /**
    * Constructs a new {@link HardwareComponent} without an initial state. The
    * initial state must be set by calling {@link #setState(S)}
-   * or {@link #put(S, Image)} before drawing the image.
+   * or {@link #put(S, Sprite)} before drawing the image.
    *
    * @param insets The padding to use around the component so that letters
    *               can be drawn within a safe region, without extending beyond
@@ -93,7 +103,7 @@ public final class HardwareComponent
     final var g2 = (Graphics2D) g.create();
     g2.setRenderingHints( RENDERING_HINTS );
     g2.setComposite( AlphaComposite.Src );
-    g2.drawImage( getActiveImage(), 0, 0, this );
+    getActiveSprite().draw( g2, 0, 0, this );
     g2.dispose();
   }
 
@@ -104,26 +114,87 @@ public final class HardwareComponent
    * @param hwSwitch The state to associate with an image.
    * @param image    The image to paint when the given state is selected.
    */
-  public void put( final S hwSwitch, final I image ) {
-    getStateImages().put( hwSwitch, image );
+  public void put( final S hwSwitch, final Sprite image ) {
+    mStateImages.put( hwSwitch, image );
 
     // Change the state variable directly, no need to issue a repaint request.
     mState = hwSwitch;
+    mSprite = image;
   }
 
   /**
-   * Repaints this component by changing its mutable state. The new state
-   * must have been previously registered via {@link #put(S, Image)}.
+   * Changes this component's mutable state. The new state must have been
+   * previously registered via {@link #put(S, Sprite)}. This does not request
+   * a repaint; callers decide when the component is painted, so that
+   * multiple changes can be coalesced into a single paint.
    *
    * @param state The new state.
    */
   public void setState( final S state ) {
     assert state != null;
 
-    if( !state.equals( mState ) ) {
-      mState = state;
-      repaint();
+    mState = state;
+    mSprite = getStateImages().get( state );
+  }
+
+  /**
+   * Changes the image to paint without changing the state, for images that
+   * represent a combination of states. Like {@link #setState(S)}, this does
+   * not request a repaint.
+   *
+   * @param sprite The image to paint until the state or image next changes.
+   */
+  public void show( final Sprite sprite ) {
+    assert sprite != null;
+
+    mSprite = sprite;
+  }
+
+  /**
+   * Adds this component's image, followed by the text of its visible
+   * labels, to a snapshot of the overlay. This must be called on the event
+   * dispatch thread.
+   *
+   * @param blits Receives the copies that draw this component.
+   * @param x     The component's horizontal position on the overlay.
+   * @param y     The component's vertical position on the overlay.
+   * @param scale The ratio of device pixels to user space pixels.
+   */
+  public void snapshot(
+    final List<RenderSnapshot.Blit> blits,
+    final int x, final int y, final double scale ) {
+    blits.add( getActiveSprite().toBlit( x, y ) );
+
+    for( final var child : getComponents() ) {
+      if( child instanceof AutofitLabel ) {
+        ((AutofitLabel) child).snapshot(
+          blits, x + child.getX(), y + child.getY(), scale );
+      }
+    }
+  }
+
+  /**
+   * Replaces every state's image, keeping the current state, such as after
+   * the images are rasterized for a different display scale.
+   *
+   * @param images The image for each state, including the current state.
+   * @param insets The available space on the new images for drawing.
+   */
+  public void showImages( final Map<S, Sprite> images, final Insets insets ) {
+    assert images != null;
+    assert insets != null;
+
+    mStateImages.clear();
+    mStateImages.putAll( images );
+    mInsets = insets;
+    mPreferredSize = null;
+
+    if( mState != null ) {
+      mSprite = getStateImages().get( mState );
     }
+
+    invalidate();
+    repaint();
   }
 
   public S getState() {
@@ -132,18 +203,16 @@ public final class HardwareComponent
 
   private Dimension calcPreferredSize() {
     // Race-condition guard.
-    final var image = getActiveImage();
+    final var sprite = getActiveSprite();
 
-    return new Dimension(
-      image.getWidth( null ), image.getHeight( null )
-    );
+    return new Dimension( sprite.getWidth(), sprite.getHeight() );
   }
 
-  private I getActiveImage() {
-    return getStateImages().get( getState() );
+  private Sprite getActiveSprite() {
+    return mSprite;
   }
 
-  private Map<S, I> getStateImages() {
+  private Map<S, Sprite> getStateImages() {
     return mStateImages;
   }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import java.awt.*;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Responsible for the components that draw the hardware switches using a
+ * set of {@link HardwareImages}. Images may be built on any thread, whereas
+ * the components must be created and changed on the event dispatch thread.
+ * The components can switch to another set of images, such as one
+ * rasterized for a different display scale, without being recreated.
+ */
+public final class HardwareComponents {
+  private final Map<HardwareSwitch, HardwareComponent<HardwareSwitchState>>
+    mSwitches = new EnumMap<>( HardwareSwitch.class );
+
+  /**
+   * The images being shown.
+   */
+  private HardwareImages mImages;
+
+  /**
+   * Creates a component for every switch that has images. Switches that
+   * share images, such as the mouse buttons, share a component. This must
+   * be called on the event dispatch thread.
+   *
+   * @param images The images to show.
+   */
+  public HardwareComponents( final HardwareImages images ) {
+    final var shared = new IdentityHashMap<
+      Map<HardwareSwitchState, Sprite>, HardwareComponent<HardwareSwitchState>>();
+
+    for( final var hwSwitch : HardwareSwitch.values() ) {
+      final var stateImages = images.getStateImages( hwSwitch );
+
+      if( stateImages != null ) {
+        mSwitches.put( hwSwitch, shared.computeIfAbsent(
+          stateImages,
+          k -> create( stateImages, images.getInsets( hwSwitch ) ) ) );
+      }
+    }
+
+    mImages = images;
+  }
+
+  /**
+   * Switches every component to the given images, keeping each component's
+   * state. This must be called on the event dispatch thread.
+   *
+   * @param images The images to show.
+   */
+  public void show( final HardwareImages images ) {
+    mImages = images;
+
+    for( final var entry : mSwitches.entrySet() ) {
+      final var hwSwitch = entry.getKey();
+
+      entry.getValue().showImages(
+        images.getStateImages( hwSwitch ), images.getInsets( hwSwitch ) );
+    }
+  }
+
+  /**
+   * Returns the images being shown.
+   *
+   * @return The images most recently passed to {@link #show}, or the
+   * constructor.
+   */
+  public HardwareImages getImages() {
+    return mImages;
+  }
+
+  /**
+   * Returns the mouse images for combinations of held switches, which are
+   * drawn by the component for any mouse switch.
+   *
+   * @return The mouse images, keyed by bitmask, from the images being shown.
+   */
+  public MouseCombinations getMouseCombinations() {
+    return mImages.getMouseCombinations();
+  }
+
+  public HardwareComponent<HardwareSwitchState> get(
+    final HardwareSwitch hwSwitch ) {
+    return mSwitches.get( hwSwitch );
+  }
+
+  private static HardwareComponent<HardwareSwitchState> create(
+    final Map<HardwareSwitchState, Sprite> stateImages, final Insets insets ) {
+    final var component = new HardwareComponent<HardwareSwitchState>( insets );
+
+    // The last image put is painted first, which is the released state.
+    stateImages.forEach( component::put );
+
+    return component;
+  }
+}
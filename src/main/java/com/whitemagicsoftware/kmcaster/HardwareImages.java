@@ -29,22 +29,41 @@ package com.whitemagicsoftware.kmcaster;
 
 import com.whitemagicsoftware.kmcaster.ui.DimensionTuple;
 import com.whitemagicsoftware.kmcaster.ui.PaddedInsets;
+import com.whitemagicsoftware.kmcaster.util.AssetCache;
 import com.whitemagicsoftware.kmcaster.util.Pair;
 
 import java.awt.*;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.whitemagicsoftware.kmcaster.HardwareState.SWITCH_PRESSED;
 import static com.whitemagicsoftware.kmcaster.HardwareState.SWITCH_RELEASED;
 import static com.whitemagicsoftware.kmcaster.HardwareSwitch.*;
 import static com.whitemagicsoftware.kmcaster.exceptions.Rethrowable.rethrow;
 import static java.lang.String.format;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toConcurrentMap;
 
 /**
  * Responsible for loading vector graphics representations of application
  * images. The images provide an on-screen interface that indicate to the user
  * what key or mouse events have been triggered.
+ * <p>
+ * Images are rasterized at the resolution of the display, so that a display
+ * scaled to twice the size receives images with twice the pixels, drawn
+ * without being enlarged.
+ * </p>
+ * <p>
+ * Instances contain no user interface components, so they may be built on
+ * any thread; {@link HardwareComponents} draws them on the event dispatch
+ * thread.
+ * </p>
  */
 public final class HardwareImages {
   private final static String DIR_IMAGES = "/images";
@@ -79,62 +98,311 @@ public final class HardwareImages {
       MOUSE_EXTRA, new Insets( 27, 5, 11, 5 )
   );
 
-  private final static SvgRasterizer sRasterizer = new SvgRasterizer();
+  /**
+   * Atlases shared by all instances, keyed by the resource paths of the
+   * images they hold, paired with the application dimensions and the
+   * dimensions rasterized for the display.
+   */
+  private final static AssetCache<Pair<Set<String>, DimensionTuple>, SpriteAtlas<String>>
+      sAssets = new AssetCache<>();
 
   private final Dimension mAppDimensions;
 
-  private final Map
-      <HardwareSwitch, HardwareComponent<HardwareSwitchState, Image>>
-      mSwitches = new HashMap<>();
+  /**
+   * Application dimensions in display pixels, which are larger than the
+   * application dimensions on high-resolution displays.
+   */
+  private final Dimension mRasterDimensions;
+
+  /**
+   * Ratio of display pixels to user space pixels.
+   */
+  private final double mPixelScale;
+  private final RasterCache mCache;
+
+  /**
+   * Display that the images will be drawn upon, or {@code null} if there
+   * is no display.
+   */
+  private final GraphicsConfiguration mConfiguration;
+
+  /**
+   * Pixel format of the atlas, chosen for the display.
+   */
+  private final ImageFormat mFormat;
+
+  /**
+   * Images rasterized when the application was built, keyed by resource
+   * path (without the file name extension); empty if the application height
+   * has no pre-rasterized pack.
+   */
+  private final Map<String, Pair<Image, DimensionTuple>> mPack;
+
+  /**
+   * Identifies this instance's atlas in {@link #sAssets}.
+   */
+  private final Pair<Set<String>, DimensionTuple> mAtlasKey;
+
+  /**
+   * Every image and its scale, keyed by resource path (without the file
+   * name extension).
+   */
+  private final SpriteAtlas<String> mAtlas;
+
+  /**
+   * Image for each state of each switch, in the order that the images were
+   * added. Switches drawn by the same component, such as the mouse buttons,
+   * share a single map.
+   */
+  private final Map<HardwareSwitch, Map<HardwareSwitchState, Sprite>>
+      mStateImages = new EnumMap<>( HardwareSwitch.class );
+
+  /**
+   * Space on each switch's image available for drawing labels, in user
+   * space.
+   */
+  private final Map<HardwareSwitch, Insets> mInsets =
+      new EnumMap<>( HardwareSwitch.class );
 
+  /**
+   * Mouse images for any combination of held buttons and scroll directions.
+   */
+  private final MouseCombinations mMouseCombinations;
+
+  /**
+   * Creates images for drawing on the default display.
+   *
+   * @param userSettings The application height and image preferences.
+   */
   public HardwareImages( final Settings userSettings ) {
-    mAppDimensions = userSettings.createAppDimensions();
+    this( userSettings, ImageFormat.getDefaultConfiguration() );
+  }
+
+  /**
+   * Creates images in the format and at the resolution of the given
+   * display.
+   *
+   * @param userSettings  The application height and image preferences.
+   * @param configuration The display the images will be drawn upon, or
+   *                      {@code null} if there is no display.
+   */
+  public HardwareImages(
+      final Settings userSettings,
+      final GraphicsConfiguration configuration ) {
+    this(
+        userSettings, configuration, userSettings.createAppDimensions() );
+  }
+
+  /**
+   * Creates images for the given application dimensions, in the format and
+   * at the resolution of the given display.
+   *
+   * @param userSettings  The image preferences.
+   * @param configuration The display the images will be drawn upon, or
+   *                      {@code null} if there is no display.
+   * @param appDimensions The application width and height, in user space.
+   */
+  public HardwareImages(
+      final Settings userSettings,
+      final GraphicsConfiguration configuration,
+      final Dimension appDimensions ) {
+    mAppDimensions = new Dimension( appDimensions );
+    mConfiguration = configuration;
+    mPixelScale = pixelScale( configuration );
+    mRasterDimensions = new Dimension(
+        (int) Math.round( mAppDimensions.width * mPixelScale ),
+        (int) Math.round( mAppDimensions.height * mPixelScale ) );
+    mFormat = userSettings.getImageFormat().resolve( configuration );
+    mCache = RasterCache.open( userSettings.getRasterCacheBytes() );
+    mPack = RasterPack.load( mRasterDimensions ).orElse( Map.of() );
+
+    final var keys = keyboardSwitches( userSettings.isSuperEnabled() );
+    mAtlasKey = new Pair<>(
+        new LinkedHashSet<>( imagePaths( keys ) ),
+        new DimensionTuple(
+            new Dimension( mAppDimensions ),
+            new Dimension( mRasterDimensions ) ) );
+    mAtlas = sAssets.acquire( mAtlasKey, key -> createAtlas( key.getKey() ) );
 
     final var mouseReleased = mouseImage( "0" );
-    final var mouseScale = mouseReleased.getValue();
-    final var mouseStates =
-        createHardwareComponent( MOUSE_EXTRA, mouseScale );
+    final var mouseInsets =
+        createInsets( MOUSE_EXTRA, mouseReleased.getScale() );
+    final var mouseStates = new LinkedHashMap<HardwareSwitchState, Sprite>();
+    final var mouseImages = Collections.unmodifiableMap( mouseStates );
+    final var mousePressed = new EnumMap<HardwareSwitch, Sprite>(
+        HardwareSwitch.class );
 
     for( final var hwSwitch : mouseSwitches() ) {
       final var stateOn = state( hwSwitch, SWITCH_PRESSED );
       final var stateOff = state( hwSwitch, SWITCH_RELEASED );
       final var imageDn = mouseImage( hwSwitch.toString() );
 
-      mouseStates.put( stateOn, imageDn.getKey() );
-      mouseStates.put( stateOff, mouseReleased.getKey() );
-      mSwitches.put( hwSwitch, mouseStates );
+      mouseStates.put( stateOn, imageDn );
+      mouseStates.put( stateOff, mouseReleased );
+      mousePressed.put( hwSwitch, imageDn );
+      mStateImages.put( hwSwitch, mouseImages );
+      mInsets.put( hwSwitch, mouseInsets );
     }
 
-    for( final var key : keyboardSwitches( userSettings.isSuperEnabled() ) ) {
+    mMouseCombinations = new MouseCombinations(
+        mouseReleased, mousePressed,
+        ( w, h ) -> mFormat.create( mConfiguration, w, h ) );
+
+    for( final var key : keys ) {
       final var stateOn = state( key, SWITCH_PRESSED );
       final var stateOff = state( key, SWITCH_RELEASED );
       final var imageDn = keyDnImage( FILE_NAME_PREFIXES.get( key ) );
       final var imageUp = keyUpImage( FILE_NAME_PREFIXES.get( key ) );
-      final var scale = imageDn.getValue();
-      final var keyStates = createHardwareComponent( key, scale );
+      final var keyStates = new LinkedHashMap<HardwareSwitchState, Sprite>();
+
+      keyStates.put( stateOn, imageDn );
+      keyStates.put( stateOff, imageUp );
+      mStateImages.put( key, Collections.unmodifiableMap( keyStates ) );
+      mInsets.put( key, createInsets( key, imageDn.getScale() ) );
+    }
+  }
+
+  /**
+   * Releases this instance's atlas, which is discarded unless used by
+   * another instance. The images must no longer be shown.
+   */
+  public void dispose() {
+    sAssets.release( mAtlasKey );
+  }
+
+  /**
+   * Returns the image for each state of the given switch. The mouse
+   * switches share the same images, because a single component draws them.
+   *
+   * @param hwSwitch The switch to look up.
+   * @return The images in the order added, ending with the released state,
+   * or {@code null} if the switch has no images.
+   */
+  public Map<HardwareSwitchState, Sprite> getStateImages(
+      final HardwareSwitch hwSwitch ) {
+    return mStateImages.get( hwSwitch );
+  }
+
+  /**
+   * Returns the space on the given switch's image available for labels.
+   *
+   * @param hwSwitch The switch to look up.
+   * @return The insets in user space, or {@code null} if the switch has no
+   * images.
+   */
+  public Insets getInsets( final HardwareSwitch hwSwitch ) {
+    return mInsets.get( hwSwitch );
+  }
+
+  /**
+   * Returns the application dimensions that the images were scaled to fit.
+   *
+   * @return The application width and height, in user space.
+   */
+  public Dimension getAppDimensions() {
+    return new Dimension( mAppDimensions );
+  }
+
+  /**
+   * Returns the ratio of display pixels to user space pixels that the images
+   * were rasterized for.
+   *
+   * @return A value greater than one for high-resolution displays.
+   */
+  public double getPixelScale() {
+    return mPixelScale;
+  }
+
+  /**
+   * Returns the ratio of display pixels to user space pixels for the given
+   * display.
+   *
+   * @param configuration The display, or {@code null} if there is none.
+   * @return The horizontal scale of the display's default transform.
+   */
+  public static double pixelScale( final GraphicsConfiguration configuration ) {
+    return configuration == null
+        ? 1
+        : configuration.getDefaultTransform().getScaleX();
+  }
+
+  /**
+   * Returns the pixel format of the images, as chosen for the display.
+   *
+   * @return A format other than {@link ImageFormat#FASTEST}.
+   */
+  public ImageFormat getImageFormat() {
+    return mFormat;
+  }
+
+  /**
+   * Lists every image needed to draw the given keys and all mouse buttons.
+   * Keys that share images (e.g., Alt and Ctrl) list them once per key.
+   * This is package-private so that the build can pre-rasterize the images.
+   *
+   * @param keys The keyboard switches to draw.
+   * @return The resource paths of the images to rasterize.
+   */
+  static List<String> imagePaths( final HardwareSwitch[] keys ) {
+    final var paths = new ArrayList<String>();
 
-      keyStates.put( stateOn, imageDn.getKey() );
-      keyStates.put( stateOff, imageUp.getKey() );
-      mSwitches.put( key, keyStates );
+    paths.add( mousePath( "0" ) );
+
+    for( final var hwSwitch : mouseSwitches() ) {
+      paths.add( mousePath( hwSwitch.toString() ) );
     }
+
+    for( final var key : keys ) {
+      final var prefix = FILE_NAME_PREFIXES.get( key );
+
+      paths.add( keyPath( "dn", prefix ) );
+      paths.add( keyPath( "up", prefix ) );
+    }
+
+    return paths;
   }
 
-  private PaddedInsets createInsets( final HardwareSwitch hwSwitch ) {
-    return new PaddedInsets( SWITCH_INSETS.get( hwSwitch ) );
+  /**
+   * Creates the images concurrently, then packs them into an atlas in the
+   * display's chosen format. Each diagram is independent, so the images are
+   * created on the fork-join pool running the caller (the common pool,
+   * unless called from within another pool). The individual images are
+   * discarded once packed.
+   *
+   * @param paths The resource paths of the distinct images to create.
+   * @return The atlas of rasterized images, keyed by resource path.
+   */
+  private SpriteAtlas<String> createAtlas( final Set<String> paths ) {
+    return new SpriteAtlas<>(
+        paths
+            .parallelStream()
+            .collect( toConcurrentMap( identity(), this::createImage ) ),
+        mPixelScale,
+        ( w, h ) -> mFormat.create( mConfiguration, w, h ) );
   }
 
-  private HardwareComponent<HardwareSwitchState, Image> createHardwareComponent(
+  private Insets createInsets(
       final HardwareSwitch hwSwitch,
       final DimensionTuple scale ) {
-    final var insets = createInsets( hwSwitch );
-    final var scaledInsets = insets.scale( scale );
+    final var insets = new PaddedInsets( SWITCH_INSETS.get( hwSwitch ) );
+    final var rasterized = scale.getValue();
 
-    return new HardwareComponent<>( scaledInsets );
+    // Insets are measured in user space, not display pixels.
+    return insets.scale( new DimensionTuple(
+        scale.getKey(),
+        new Dimension(
+            (int) Math.round( rasterized.width / mPixelScale ),
+            (int) Math.round( rasterized.height / mPixelScale ) ) ) );
   }
 
-  public HardwareComponent<HardwareSwitchState, Image> get(
-      final HardwareSwitch hwSwitch ) {
-    return mSwitches.get( hwSwitch );
+  /**
+   * Returns the mouse images for combinations of held switches, which are
+   * drawn by the component for any mouse switch.
+   *
+   * @return The mouse images, keyed by bitmask.
+   */
+  public MouseCombinations getMouseCombinations() {
+    return mMouseCombinations;
   }
 
   private HardwareSwitchState state(
@@ -142,34 +410,60 @@ public final class HardwareImages {
     return new HardwareSwitchState( name, state );
   }
 
-  private Pair<Image, DimensionTuple> mouseImage( final String prefix ) {
-    return createImage( format( "%s/%s", DIR_IMAGES_MOUSE, prefix ) );
+  private static String mousePath( final String prefix ) {
+    return format( "%s/%s", DIR_IMAGES_MOUSE, prefix );
+  }
+
+  private static String keyPath( final String state, final String prefix ) {
+    return format( "%s/%s/%s", DIR_IMAGES_KEYBOARD, state, prefix );
   }
 
-  private Pair<Image, DimensionTuple> keyImage(
-      final String state, final String prefix ) {
-    return createImage(
-        format( "%s/%s/%s", DIR_IMAGES_KEYBOARD, state, prefix )
-    );
+  private Sprite mouseImage( final String prefix ) {
+    return mAtlas.get( mousePath( prefix ) );
   }
 
-  private Pair<Image, DimensionTuple> keyUpImage( final String prefix ) {
+  private Sprite keyImage( final String state, final String prefix ) {
+    return mAtlas.get( keyPath( state, prefix ) );
+  }
+
+  private Sprite keyUpImage( final String prefix ) {
     return keyImage( "up", prefix );
   }
 
-  private Pair<Image, DimensionTuple> keyDnImage( final String prefix ) {
+  private Sprite keyDnImage( final String prefix ) {
     return keyImage( "dn", prefix );
   }
 
+  /**
+   * Returns the rasterized image for the given path, from the pack built
+   * with the application or the cache when possible, otherwise by
+   * rasterizing the SVG file and caching the result. This may be called
+   * concurrently.
+   *
+   * @param path The resource path, without the file name extension.
+   * @return The image paired with its source and scaled dimensions.
+   */
   private Pair<Image, DimensionTuple> createImage( final String path ) {
+    final var packed = mPack.get( path );
+
+    if( packed != null ) {
+      return packed;
+    }
+
     final var resource = format( "%s.svg", path );
+    final var key = mCache.key( resource, getRasterDimensions() );
+    final var cached = mCache.load( key );
+
+    if( cached.isPresent() ) {
+      return cached.get();
+    }
 
     try {
-      final var d = sRasterizer.loadDiagram( resource );
-      final var scale = sRasterizer.calculateScale( d, getAppDimensions() );
-      final var image = sRasterizer.rasterize( d, getAppDimensions() );
+      final var raster = Rasterizer.sRasterizer.rasterize(
+          resource, getRasterDimensions() );
+      final var scale = raster.getValue();
 
-      return new Pair<>( image, scale );
+      return new Pair<>( mCache.store( key, raster.getKey(), scale ), scale );
     } catch( final Exception ex ) {
       rethrow( ex );
     }
@@ -178,7 +472,15 @@ public final class HardwareImages {
     throw new RuntimeException( msg );
   }
 
-  private Dimension getAppDimensions() {
-    return mAppDimensions;
+  private Dimension getRasterDimensions() {
+    return mRasterDimensions;
+  }
+
+  /**
+   * Defers loading the SVG library until an image is missing from both the
+   * pack and the cache.
+   */
+  private static final class Rasterizer {
+    private static final SvgRasterizer sRasterizer = new SvgRasterizer();
   }
 }
@@ -27,8 +27,6 @@
  */
 package com.whitemagicsoftware.kmcaster;
 
-import static java.lang.Boolean.FALSE;
-
 /**
  * Responsible for defining hardware switch states.
  */
@@ -43,23 +41,15 @@ public enum HardwareState {
    */
   SWITCH_RELEASED;
 
-  /**
-   * Convenience constant used to determine pressed or released state.
-   */
-  public final static String BOOLEAN_FALSE = FALSE.toString();
-
   /**
    * Returns the {@link HardwareState} that corresponds to the given
-   * state string. If the state equals {@link Boolean#FALSE} (case is
-   * sensitive) or is empty, then this will return {@link #SWITCH_RELEASED},
-   * otherwise {@link #SWITCH_PRESSED}.
+   * pressed state.
    *
-   * @param state The state to convert to an enumerated type.
-   * @return {@link #SWITCH_RELEASED} if the state is "false" or empty ("").
+   * @param pressed {@code true} means pressed, {@code false} means released.
+   * @return {@link #SWITCH_PRESSED} if pressed, otherwise
+   * {@link #SWITCH_RELEASED}.
    */
-  public static HardwareState valueFrom( final String state ) {
-    return (BOOLEAN_FALSE.equals( state ) || state.isEmpty())
-        ? SWITCH_RELEASED
-        : SWITCH_PRESSED;
+  public static HardwareState valueFrom( final boolean pressed ) {
+    return pressed ? SWITCH_PRESSED : SWITCH_RELEASED;
   }
 }
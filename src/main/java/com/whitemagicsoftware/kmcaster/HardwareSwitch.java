@@ -27,8 +27,6 @@
  */
 package com.whitemagicsoftware.kmcaster;
 
-import java.util.NoSuchElementException;
-
 import static com.github.kwhat.jnativehook.NativeInputEvent.*;
 
 /**
@@ -49,6 +47,11 @@ public enum HardwareSwitch {
   KEY_ALT( "alt", ALT_MASK ),
   KEY_REGULAR( "regular" );
 
+  /**
+   * Cached because {@link #values()} returns a new array on every call.
+   */
+  private final static HardwareSwitch[] VALUES = values();
+
   private final static HardwareSwitch[] mMouseSwitches = {
       MOUSE_EXTRA, MOUSE_LEFT, MOUSE_MIDDLE, MOUSE_RIGHT,
       MOUSE_SCROLL_U, MOUSE_SCROLL_D, MOUSE_SCROLL_L, MOUSE_SCROLL_R
@@ -69,6 +72,14 @@ public enum HardwareSwitch {
   private final String mName;
   private final int mMask;
 
+  /**
+   * Category flags, computed once from the enum name to avoid string
+   * comparisons when dispatching events.
+   */
+  private final boolean mKeyboard;
+  private final boolean mMouse;
+  private final boolean mScroll;
+
   /**
    * Constructs a new switch with no mask value.
    *
@@ -88,6 +99,9 @@ public enum HardwareSwitch {
   HardwareSwitch( final String name, final int mask ) {
     mName = name;
     mMask = mask;
+    mKeyboard = isPrefix( "KEY" );
+    mMouse = isPrefix( "MOUSE" );
+    mScroll = isPrefix( "MOUSE_SCROLL" );
   }
 
   /**
@@ -99,6 +113,17 @@ public enum HardwareSwitch {
     return mMask != NO_MASK;
   }
 
+  /**
+   * Returns the modifier key bitmask, which has one bit set for each of the
+   * left and right keys that control this switch.
+   *
+   * @return The native hook library's mask for this modifier, or -1 if this
+   * switch is not a modifier.
+   */
+  public int getMask() {
+    return mMask;
+  }
+
   /**
    * Answers whether the given name and the switch's name are the same,
    * ignoring case.
@@ -116,7 +141,7 @@ public enum HardwareSwitch {
    * @return {@code true} when this is a keyboard key.
    */
   public boolean isKeyboard() {
-    return isPrefix( "KEY" );
+    return mKeyboard;
   }
 
   /**
@@ -125,7 +150,7 @@ public enum HardwareSwitch {
    * @return {@code true} to indicate a scrolling action occurred.
    */
   public boolean isScroll() {
-    return isPrefix( "MOUSE_SCROLL" );
+    return mScroll;
   }
 
   /**
@@ -134,25 +159,17 @@ public enum HardwareSwitch {
    * @return {@code true} to indicate a mouse action occurred.
    */
   public boolean isMouse() {
-    return isPrefix( "MOUSE" );
+    return mMouse;
   }
 
   /**
-   * Looks up the key that matches the given name, case-insensitively.
+   * Looks up the key that has the given ordinal value.
    *
-   * @param name The name of the key to find in this enum.
-   * @return The {@link HardwareSwitch} object that matches the name.
-   */
-  public static HardwareSwitch valueFrom( final String name ) {
-    for( final var b : HardwareSwitch.values() ) {
-      if( b.isName( name ) ) {
-        return b;
-      }
-    }
-
-    // This could be thrown when a mouse button is pressed that does not have
-    // a visual representation.
-    throw new NoSuchElementException( name );
+   * @param ordinal The {@link #ordinal()} of the key to find in this enum.
+   * @return The {@link HardwareSwitch} object at the given ordinal.
+   */
+  public static HardwareSwitch valueFrom( final int ordinal ) {
+    return VALUES[ ordinal ];
   }
 
   /**
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.listeners.SwitchListener;
+import com.whitemagicsoftware.kmcaster.util.Pair;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Responsible for putting the application to sleep when no switch has
+ * changed for a while, and waking it on the next change. While asleep,
+ * nothing is drawn or scheduled, so the process uses no processor time
+ * until the next key press or mouse event.
+ * <p>
+ * This must be notified of switch changes before any listener that draws
+ * them, so that the application is awake before the change is drawn.
+ * </p>
+ */
+final class IdleMonitor implements SwitchListener {
+  /**
+   * Linux reports the process's resident memory here.
+   */
+  private static final Path PROC_STATUS = Path.of( "/proc/self/status" );
+
+  private final long mDelayNanos;
+  private final Timer mTimer;
+  private final boolean mReport;
+
+  /**
+   * Actions to run when falling asleep (key) and waking (value).
+   */
+  private final List<Pair<Runnable, Runnable>> mListeners =
+    new CopyOnWriteArrayList<>();
+
+  /**
+   * Value of {@link System#nanoTime()} when a switch last changed.
+   */
+  private volatile long mLastInput = System.nanoTime();
+
+  /**
+   * Set while asleep; only changed when holding this object's lock.
+   */
+  private volatile boolean mIdle;
+
+  /**
+   * When the current active or idle period began, for reporting.
+   */
+  private long mPeriodNanos = System.nanoTime();
+
+  /**
+   * Processor time used by the process when the current period began.
+   */
+  private long mPeriodCpuNanos = cpuNanos();
+
+  /**
+   * Prepares to sleep after the given time without input.
+   *
+   * @param delay  Milliseconds without input before sleeping, must be
+   *               greater than zero.
+   * @param report {@code true} to write processor time and memory use for
+   *               each active and idle period to standard output.
+   */
+  IdleMonitor( final int delay, final boolean report ) {
+    assert delay > 0;
+
+    mDelayNanos = MILLISECONDS.toNanos( delay );
+    mReport = report;
+    mTimer = new Timer( delay, ( event ) -> check() );
+    mTimer.setRepeats( false );
+  }
+
+  /**
+   * Adds actions to run when the application falls asleep and wakes. The
+   * sleep action runs on the event dispatch thread. The wake action runs on
+   * the thread that delivered the switch change, before the change is
+   * handled, so it must be thread-safe and quick.
+   *
+   * @param sleep Called when there has been no input for the delay.
+   * @param wake  Called when input arrives while asleep.
+   */
+  void addListener( final Runnable sleep, final Runnable wake ) {
+    mListeners.add( new Pair<>( sleep, wake ) );
+  }
+
+  /**
+   * Begins counting the time without input.
+   */
+  void start() {
+    mLastInput = System.nanoTime();
+    mTimer.restart();
+  }
+
+  /**
+   * Records the time of the change and wakes the application if it was
+   * asleep.
+   *
+   * @param event Ignored.
+   * @param nanos Ignored.
+   */
+  @Override
+  public void switchChanged( final long event, final long nanos ) {
+    mLastInput = System.nanoTime();
+
+    if( mIdle ) {
+      wake();
+    }
+  }
+
+  /**
+   * Sleeps if there has been no input for the delay, otherwise checks again
+   * when the delay will have passed since the last input.
+   */
+  private void check() {
+    final var checked = mLastInput;
+    final var remaining = mDelayNanos - (System.nanoTime() - checked);
+
+    if( remaining > 0 ) {
+      mTimer.setInitialDelay( (int) NANOSECONDS.toMillis( remaining ) + 1 );
+      mTimer.restart();
+    }
+    else {
+      sleep( checked );
+    }
+  }
+
+  /**
+   * Runs the sleep actions. Input that arrived after the last check, but
+   * before {@link #mIdle} was set, was not seen as waking the application,
+   * so it is treated as waking it immediately.
+   *
+   * @param checked The time of the last input when the delay was checked.
+   */
+  private synchronized void sleep( final long checked ) {
+    report( "Active" );
+    mIdle = true;
+
+    for( final var listener : mListeners ) {
+      listener.getKey().run();
+    }
+
+    if( mLastInput != checked ) {
+      wake();
+    }
+  }
+
+  /**
+   * Runs the wake actions and starts counting the time without input.
+   */
+  private synchronized void wake() {
+    if( mIdle ) {
+      mIdle = false;
+      report( "Idle" );
+
+      for( final var listener : mListeners ) {
+        listener.getValue().run();
+      }
+
+      mTimer.setInitialDelay( (int) NANOSECONDS.toMillis( mDelayNanos ) );
+      mTimer.restart();
+    }
+  }
+
+  /**
+   * Writes the length of the period that just ended, the processor time
+   * used during it, and the current resident memory to standard output.
+   *
+   * @param period Name of the period that just ended.
+   */
+  private void report( final String period ) {
+    if( mReport ) {
+      final var now = System.nanoTime();
+      final var cpu = cpuNanos();
+      final var seconds = (now - mPeriodNanos) / 1e9;
+      final var cpuMillis = (cpu - mPeriodCpuNanos) / 1e6;
+      final var rss = residentKilobytes();
+
+      System.out.printf(
+        "%s for %.1f s: CPU %.0f ms (%.2f ms/s), resident %s%n",
+        period, seconds, cpuMillis, cpuMillis / seconds,
+        rss < 0 ? "unknown" : (rss / 1024) + " MB" );
+
+      mPeriodNanos = now;
+      mPeriodCpuNanos = cpu;
+    }
+  }
+
+  /**
+   * Returns the processor time used by all of the process's threads.
+   *
+   * @return Nanoseconds of processor time, or zero if unknown.
+   */
+  private static long cpuNanos() {
+    return ProcessHandle.current().info().totalCpuDuration()
+                        .map( Duration::toNanos ).orElse( 0L );
+  }
+
+  /**
+   * Returns the process's resident memory, which is only known on Linux.
+   *
+   * @return Kilobytes of resident memory, or -1 if unknown.
+   */
+  private static long residentKilobytes() {
+    try {
+      for( final var line : Files.readAllLines( PROC_STATUS ) ) {
+        if( line.startsWith( "VmRSS:" ) ) {
+          return Long.parseLong( line.replaceAll( "[^0-9]", "" ) );
+        }
+      }
+    } catch( final IOException | NumberFormatException ignored ) {
+    }
+
+    return -1;
+  }
+}
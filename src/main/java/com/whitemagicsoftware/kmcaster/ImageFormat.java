@@ -0,0 +1,263 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.awt.Transparency.TRANSLUCENT;
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Responsible for creating images in the pixel format chosen for drawing
+ * onto the screen. Images in the display's own format can be copied to the
+ * screen without converting every pixel on every paint.
+ */
+public enum ImageFormat {
+  /**
+   * The translucent format preferred by the display.
+   */
+  COMPATIBLE( "compatible" ) {
+    @Override
+    BufferedImage create(
+      final GraphicsConfiguration gc, final int w, final int h ) {
+      return gc == null
+        ? ARGB_PRE.create( null, w, h )
+        : gc.createCompatibleImage( w, h, TRANSLUCENT );
+    }
+  },
+
+  /**
+   * Premultiplied 8-bit ARGB packed into integers.
+   */
+  ARGB_PRE( "argb-pre" ) {
+    @Override
+    BufferedImage create(
+      final GraphicsConfiguration gc, final int w, final int h ) {
+      return new BufferedImage( w, h, TYPE_INT_ARGB_PRE );
+    }
+  },
+
+  /**
+   * Non-premultiplied 8-bit ABGR stored as bytes, which is the format
+   * produced by the SVG rasterizer.
+   */
+  ABGR( "abgr" ) {
+    @Override
+    BufferedImage create(
+      final GraphicsConfiguration gc, final int w, final int h ) {
+      return new BufferedImage( w, h, TYPE_4BYTE_ABGR );
+    }
+  },
+
+  /**
+   * Whichever of the other formats draws onto the display fastest, as
+   * measured when first requested for each display.
+   */
+  FASTEST( "fastest" ) {
+    @Override
+    BufferedImage create(
+      final GraphicsConfiguration gc, final int w, final int h ) {
+      return resolve( gc ).create( gc, w, h );
+    }
+  };
+
+  private static final Map<String, ImageFormat> NAMES = Map.of(
+    COMPATIBLE.mName, COMPATIBLE,
+    ARGB_PRE.mName, ARGB_PRE,
+    ABGR.mName, ABGR,
+    FASTEST.mName, FASTEST
+  );
+
+  /**
+   * Size of the images drawn to measure each format's drawing speed.
+   */
+  private static final int SAMPLE_SIZE = 128;
+
+  /**
+   * Number of times each format is drawn when measuring its speed.
+   */
+  private static final int SAMPLE_DRAWS = 200;
+
+  /**
+   * Result of measuring the formats, computed at most once per display,
+   * because a window may be moved onto a display with a different pipeline.
+   */
+  private static final Map<GraphicsDevice, ImageFormat> sFastest =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Result of measuring the formats without a display.
+   */
+  private static volatile ImageFormat sFastestHeadless;
+
+  private final String mName;
+
+  ImageFormat( final String name ) {
+    mName = name;
+  }
+
+  /**
+   * Creates a blank, translucent image in this format.
+   *
+   * @param gc The display's configuration, or {@code null} if there is no
+   *           display.
+   * @param w  The image width, in pixels.
+   * @param h  The image height, in pixels.
+   * @return A new image.
+   */
+  abstract BufferedImage create(
+    GraphicsConfiguration gc, int w, int h );
+
+  /**
+   * Returns the format to use for the given display. This measures the
+   * candidate formats when this is {@link #FASTEST}.
+   *
+   * @param gc The display's configuration, or {@code null} if there is no
+   *           display.
+   * @return A format other than {@link #FASTEST}.
+   */
+  public ImageFormat resolve( final GraphicsConfiguration gc ) {
+    if( this != FASTEST ) {
+      return this;
+    }
+
+    if( gc != null ) {
+      return sFastest.computeIfAbsent( gc.getDevice(), d -> measure( gc ) );
+    }
+
+    var fastest = sFastestHeadless;
+
+    if( fastest == null ) {
+      sFastestHeadless = fastest = measure( null );
+    }
+
+    return fastest;
+  }
+
+  /**
+   * Returns the format matching the given name.
+   *
+   * @param name The command-line name of a format.
+   * @return The named format, or empty if the name is not known.
+   */
+  public static Optional<ImageFormat> valueFrom( final String name ) {
+    return Optional.ofNullable( NAMES.get( name.toLowerCase() ) );
+  }
+
+  /**
+   * Returns the configuration of the default display.
+   *
+   * @return The display's configuration, or {@code null} if running without
+   * a display.
+   */
+  public static GraphicsConfiguration getDefaultConfiguration() {
+    return GraphicsEnvironment.isHeadless()
+      ? null
+      : GraphicsEnvironment
+      .getLocalGraphicsEnvironment()
+      .getDefaultScreenDevice()
+      .getDefaultConfiguration();
+  }
+
+  /**
+   * Draws a translucent sample image in each candidate format onto an image
+   * like the window's back buffer, returning the quickest.
+   */
+  private static ImageFormat measure( final GraphicsConfiguration gc ) {
+    final var candidates = new ImageFormat[]{COMPATIBLE, ARGB_PRE, ABGR};
+    final var target = createTarget( gc );
+    var fastest = COMPATIBLE;
+    var best = Long.MAX_VALUE;
+
+    try {
+      for( final var candidate : candidates ) {
+        final var sample = candidate.create( gc, SAMPLE_SIZE, SAMPLE_SIZE );
+        final var g = sample.createGraphics();
+        g.setPaint( new GradientPaint(
+          0, 0, new Color( 0x80FF0000, true ),
+          SAMPLE_SIZE, SAMPLE_SIZE, new Color( 0xFF0000FF, true ) ) );
+        g.fillOval( 0, 0, SAMPLE_SIZE, SAMPLE_SIZE );
+        g.dispose();
+
+        // The first pass warms up the drawing loops.
+        draw( target, sample );
+        final var elapsed = draw( target, sample );
+
+        if( elapsed < best ) {
+          best = elapsed;
+          fastest = candidate;
+        }
+      }
+    } finally {
+      target.flush();
+    }
+
+    return fastest;
+  }
+
+  private static Image createTarget( final GraphicsConfiguration gc ) {
+    return gc == null
+      ? new BufferedImage( SAMPLE_SIZE, SAMPLE_SIZE, TYPE_INT_ARGB_PRE )
+      : gc.createCompatibleVolatileImage( SAMPLE_SIZE, SAMPLE_SIZE );
+  }
+
+  private static long draw( final Image target, final Image sample ) {
+    final var g = target.getGraphics();
+    final var start = System.nanoTime();
+
+    for( int i = 0; i < SAMPLE_DRAWS; i++ ) {
+      g.drawImage( sample, 0, 0, null );
+    }
+
+    // Wait for accelerated pipelines to finish drawing.
+    if( target instanceof VolatileImage ) {
+      Toolkit.getDefaultToolkit().sync();
+    }
+
+    final var elapsed = System.nanoTime() - start;
+    g.dispose();
+
+    return elapsed;
+  }
+
+  /**
+   * Returns the name used to select this format on the command-line.
+   *
+   * @return The format's command-line name.
+   */
+  @Override
+  public String toString() {
+    return mName;
+  }
+}
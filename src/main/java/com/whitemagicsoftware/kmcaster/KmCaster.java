@@ -28,24 +28,30 @@
 package com.whitemagicsoftware.kmcaster;
 
 import com.github.kwhat.jnativehook.GlobalScreen;
-import com.github.kwhat.jnativehook.NativeHookException;
 import com.whitemagicsoftware.kmcaster.listeners.DebugListener;
 import com.whitemagicsoftware.kmcaster.listeners.FrameDragListener;
+import com.whitemagicsoftware.kmcaster.listeners.JournalRecorder;
+import com.whitemagicsoftware.kmcaster.listeners.JournalReplayer;
 import com.whitemagicsoftware.kmcaster.listeners.KeyboardListener;
 import com.whitemagicsoftware.kmcaster.listeners.MouseListener;
+import com.whitemagicsoftware.kmcaster.listeners.SwitchListener;
+import com.whitemagicsoftware.kmcaster.ui.FontLoader;
 import com.whitemagicsoftware.kmcaster.ui.TranslucentPanel;
 import picocli.CommandLine;
 import picocli.CommandLine.Help.Ansi.Style;
 
 import javax.swing.*;
 import java.awt.*;
-import java.beans.PropertyChangeListener;
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
 
 import static com.github.kwhat.jnativehook.GlobalScreen.*;
-import static com.whitemagicsoftware.kmcaster.ui.FontLoader.initFonts;
+import static com.whitemagicsoftware.kmcaster.exceptions.Rethrowable.rethrow;
 import static java.lang.Integer.valueOf;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.logging.Level.OFF;
 import static java.util.logging.Logger.getLogger;
 import static javax.swing.SwingUtilities.invokeLater;
@@ -70,24 +76,241 @@ import static picocli.CommandLine.Help.ColorScheme;
  */
 public final class KmCaster extends JFrame {
   private final Settings mUserSettings = new Settings( this );
+  private final Startup mStartup;
 
   /**
    * Constructs a window with the class name for its frame title.
    */
   public KmCaster() {
+    this( new Startup() );
+  }
+
+  /**
+   * Constructs a window that records startup milestones.
+   *
+   * @param startup Measures the time taken to start the application.
+   */
+  KmCaster( final Startup startup ) {
     super( KmCaster.class.getSimpleName() );
+
+    assert startup != null;
+
+    mStartup = startup;
   }
 
-  public void init() {
-    final var hardwareImages = new HardwareImages( mUserSettings );
-    final var eventHandler = new EventHandler( hardwareImages, mUserSettings );
+  /**
+   * Starts the application. Fonts are registered, images are rasterized, and
+   * the native hook is registered concurrently; the window is shown on the
+   * event dispatch thread as soon as the fonts and images are ready, without
+   * waiting for the native hook. Stale raster cache entries are removed once
+   * the window is shown. This must be called after the command-line
+   * arguments have been parsed.
+   */
+  public void start() {
+    final var settings = getUserSettings();
+    final var fonts = mStartup.run( "fonts", FontLoader::initFonts );
+    final var configuration = getGraphicsConfiguration();
+    final var images = mStartup.supply(
+      "images", () -> new HardwareImages( settings, configuration ) );
+    final var hook = settings.getReplayPath().isPresent()
+      ? CompletableFuture.<Void>completedFuture( null )
+      : mStartup.run( "hook", GlobalScreen::registerNativeHook );
+
+    final var shown = fonts
+      .thenCombine( images, ( unused, hardwareImages ) -> hardwareImages )
+      .thenAcceptAsync( this::init, SwingUtilities::invokeLater );
+
+    // Trim the raster cache once per launch, after the window is shown, so
+    // that neither startup nor rescaling waits on scanning the directory.
+    final var cache = RasterCache.open( settings.getRasterCacheBytes() );
+    shown.thenCompose( unused -> mStartup.run( "evict", cache::evict ) );
+
+    CompletableFuture.allOf( shown, hook ).exceptionally( ex -> {
+      ex.printStackTrace();
+      System.exit( 1 );
+      return null;
+    } );
+  }
+
+  /**
+   * Creates the window contents and shows the window. This must be called
+   * from Swing's event dispatch thread.
+   *
+   * @param hardwareImages The rasterized keyboard and mouse images.
+   */
+  private void init( final HardwareImages hardwareImages ) {
+    final var components = new HardwareComponents( hardwareImages );
+    final var eventHandler = new EventHandler( components, mUserSettings );
+    final var idleMonitor = createIdleMonitor();
 
     initWindowFrame();
-    initWindowContents( hardwareImages );
+    final var panel = initWindowContents( components );
     pack();
+    initRendering( panel, eventHandler, idleMonitor );
     setResizable( false );
-    initListeners( eventHandler );
+    initStats( eventHandler );
+    initListeners( eventHandler, idleMonitor );
+    initScaleListener( hardwareImages, eventHandler );
+    logImageFormat( hardwareImages );
     setVisible( true );
+    initWarmUp( eventHandler );
+    initIdle( idleMonitor, panel, eventHandler );
+  }
+
+  /**
+   * Creates the monitor that puts the application to sleep without input.
+   * Sleep waits until every switch has been reset, so that no reset timer
+   * is pending while asleep.
+   *
+   * @return A monitor that has not been started.
+   */
+  private IdleMonitor createIdleMonitor() {
+    final var settings = getUserSettings();
+    final var longest = Math.max(
+      Math.max( settings.getDelayKeyRegular(), settings.getDelayKeyModifier() ),
+      Math.max( settings.getDelayMouseButton(), settings.getDelayMouseScroll() )
+    );
+    final var delay = Math.max(
+      SECONDS.toMillis( settings.getIdleSeconds() ), longest + 1000L );
+
+    return new IdleMonitor( (int) delay, settings.isStatsEnabled() );
+  }
+
+  /**
+   * Starts counting the time without input, unless sleeping is disabled.
+   * When requested, rendered labels, composed mouse images, and the
+   * compositor's frame buffer are released while asleep; the rasterized
+   * switch images are kept so that the first change after waking is drawn
+   * as quickly as any other.
+   *
+   * @param idleMonitor  Puts the application to sleep.
+   * @param panel        The panel containing the hardware components.
+   * @param eventHandler Provides the caches to release.
+   */
+  private void initIdle(
+    final IdleMonitor idleMonitor,
+    final TranslucentPanel panel,
+    final EventHandler eventHandler ) {
+    final var settings = getUserSettings();
+
+    if( settings.getIdleSeconds() > 0 ) {
+      if( settings.isIdleReleaseEnabled() ) {
+        idleMonitor.addListener( () -> {
+          eventHandler.releaseCaches();
+          panel.releaseBuffer();
+        }, () -> {} );
+      }
+
+      idleMonitor.start();
+    }
+  }
+
+  /**
+   * Prepares every known key label in the background, so that the first
+   * press of a key is drawn as quickly as later presses. A failure only
+   * means that labels are prepared when first shown, so it is reported but
+   * otherwise ignored.
+   *
+   * @param eventHandler Provides the labels to prepare.
+   */
+  private void initWarmUp( final EventHandler eventHandler ) {
+    warmUp( eventHandler, mStartup ).whenComplete(
+      ( unused, ex ) -> {
+        if( ex != null ) {
+          ex.printStackTrace();
+        }
+        else if( getUserSettings().isStatsEnabled() ) {
+          System.out.println( mStartup );
+        }
+      } );
+  }
+
+  /**
+   * Fits and renders every known key label at the labels' current sizes.
+   *
+   * @param eventHandler Provides the labels to prepare.
+   * @param startup      Runs the background task and records its progress.
+   * @return A future that completes once every label has been prepared.
+   */
+  private CompletableFuture<Void> warmUp(
+    final EventHandler eventHandler, final Startup startup ) {
+    final var twins = eventHandler.createLabelTwins(
+      KeyboardListener.getKnownLabels() );
+    final var scale =
+      getGraphicsConfiguration().getDefaultTransform().getScaleX();
+
+    return new LabelWarmUp( twins, scale ).start( startup );
+  }
+
+  /**
+   * Rasterizes the images again whenever the window moves onto a display
+   * with a different scale, such as from a standard to a high-resolution
+   * monitor, or the user resizes the window using Ctrl and the mouse wheel.
+   *
+   * @param hardwareImages The images rasterized for the current display.
+   * @param eventHandler   Switches the components to new images and
+   *                       provides the labels to resize.
+   */
+  private void initScaleListener(
+    final HardwareImages hardwareImages, final EventHandler eventHandler ) {
+    final var sets = new ScaledImageSets(
+      this, getUserSettings(), hardwareImages, eventHandler,
+      () -> warmUp( eventHandler, new Startup() ).exceptionally( ex -> {
+        ex.printStackTrace();
+        return null;
+      } ) );
+
+    addPropertyChangeListener( "graphicsConfiguration", sets );
+    addMouseWheelListener( sets );
+  }
+
+  /**
+   * Writes the pixel format chosen for the images to standard output, when
+   * debugging or statistics are enabled.
+   *
+   * @param hardwareImages The rasterized keyboard and mouse images.
+   */
+  private void logImageFormat( final HardwareImages hardwareImages ) {
+    final var settings = getUserSettings();
+
+    if( settings.isDebugEnabled() || settings.isStatsEnabled() ) {
+      System.out.printf(
+        "Image format: %s (requested %s)%n",
+        hardwareImages.getImageFormat(), settings.getImageFormat() );
+    }
+  }
+
+  /**
+   * Starts recording event latencies, if requested. The report is written
+   * to standard output when the application exits and, optionally, at a
+   * regular interval.
+   *
+   * @param eventHandler Provides the event queue counters.
+   */
+  private void initStats( final EventHandler eventHandler ) {
+    final var settings = getUserSettings();
+
+    if( settings.isStatsEnabled() ) {
+      final Runnable report = () -> {
+        LatencyStats.report( System.out );
+        System.out.println( eventHandler.getEventBuffer() );
+        System.out.println( eventHandler.getLabelCache() );
+      };
+
+      LatencyStats.enable();
+      Runtime.getRuntime().addShutdownHook( new Thread( report ) );
+
+      final var interval = SECONDS.toMillis( settings.getStatsInterval() );
+
+      if( interval > 0 ) {
+        new Timer( "stats", true ).schedule( new TimerTask() {
+          @Override
+          public void run() {
+            report.run();
+          }
+        }, interval, interval );
+      }
+    }
   }
 
   private void initWindowFrame() {
@@ -101,13 +324,14 @@ public final class KmCaster extends JFrame {
     setFocusTraversalKeysEnabled( false );
   }
 
-  private void initWindowContents( final HardwareImages hardwareImages ) {
+  private TranslucentPanel initWindowContents(
+    final HardwareComponents components ) {
     final var hgap = getGapHorizontal();
     final var vgap = getGapVertical();
     final var panel = new TranslucentPanel( hgap, vgap );
 
     for( final var hwSwitch : HardwareSwitch.values() ) {
-      final var component = hardwareImages.get( hwSwitch );
+      final var component = components.get( hwSwitch );
 
       // If there is no image for the switch, it may be a mouse button without
       // a direct visual representation.
@@ -116,14 +340,85 @@ public final class KmCaster extends JFrame {
       }
     }
 
+    panel.setPaintListener( this::firstPaint );
     getContentPane().add( panel );
+
+    return panel;
   }
 
-  private void initListeners( final EventHandler eventHandler ) {
+  /**
+   * Chooses how the window contents are drawn: by a rendering thread, through
+   * an offscreen compositor, or by Swing painting each component. This must
+   * be called once the window is displayable.
+   *
+   * @param panel        The panel containing the hardware components.
+   * @param eventHandler Requests drawing when the switch states change.
+   * @param idleMonitor  Stops the rendering thread while asleep.
+   */
+  private void initRendering(
+    final TranslucentPanel panel,
+    final EventHandler eventHandler,
+    final IdleMonitor idleMonitor ) {
+    final var settings = getUserSettings();
+
+    if( settings.isActiveRenderingEnabled() ) {
+      final var renderer =
+        new ActiveRenderer( this, panel, settings.getMaxFps() );
+
+      if( renderer.start() ) {
+        panel.setPresenter( () -> renderer.publish( 0, false ) );
+        eventHandler.setRenderer( renderer );
+        idleMonitor.addListener(
+          () -> renderer.setIdle( true ), () -> renderer.setIdle( false ) );
+        return;
+      }
+    }
+
+    if( settings.isCompositorEnabled() ) {
+      panel.setCompositing( true );
+      eventHandler.setPaintRoot( panel );
+    }
+  }
+
+  /**
+   * Records the time until the window contents were first painted, which is
+   * written to standard output when statistics are enabled.
+   */
+  private void firstPaint() {
+    mStartup.mark( "first-paint" );
+
+    if( getUserSettings().isStatsEnabled() ) {
+      System.out.println( mStartup );
+    }
+  }
+
+  private void initListeners(
+    final EventHandler eventHandler, final IdleMonitor idleMonitor ) {
     initWindowDragListener( this );
-    initMouseListener( eventHandler );
-    initKeyboardListener( eventHandler );
-    initDebugListener();
+
+    // The monitor must wake the application before the change is handled.
+    final var mouseListener = initMouseListener( idleMonitor, eventHandler );
+    final var keyboardListener =
+      initKeyboardListener( idleMonitor, eventHandler );
+    final var replayPath = getUserSettings().getReplayPath();
+
+    if( replayPath.isPresent() ) {
+      initReplay( replayPath.get(), keyboardListener, mouseListener );
+    }
+    else {
+      addNativeMouseListener( mouseListener );
+      addNativeMouseMotionListener( mouseListener );
+      addNativeMouseWheelListener( mouseListener );
+
+      // Pointer movement is not shown, so stop receiving it while asleep.
+      idleMonitor.addListener(
+        () -> removeNativeMouseMotionListener( mouseListener ),
+        () -> addNativeMouseMotionListener( mouseListener ) );
+
+      addNativeKeyListener( keyboardListener );
+      initRecorder();
+      initDebugListener();
+    }
   }
 
   private void initWindowDragListener( final JFrame listener ) {
@@ -132,19 +427,87 @@ public final class KmCaster extends JFrame {
     addMouseMotionListener( frameDragListener );
   }
 
-  private void initMouseListener( final PropertyChangeListener listener ) {
+  private MouseListener initMouseListener(
+    final SwitchListener... listeners ) {
     final MouseListener mouseListener = new MouseListener();
-    addNativeMouseListener( mouseListener );
-    addNativeMouseMotionListener( mouseListener );
-    addNativeMouseWheelListener( mouseListener );
-    mouseListener.addPropertyChangeListener( listener );
+
+    for( final var listener : listeners ) {
+      mouseListener.addSwitchListener( listener );
+    }
+
+    return mouseListener;
   }
 
-  private void initKeyboardListener( final PropertyChangeListener listener ) {
+  private KeyboardListener initKeyboardListener(
+    final SwitchListener... listeners ) {
     final KeyboardListener keyboardListener = new KeyboardListener( getUserSettings() );
-    addNativeKeyListener( keyboardListener );
-    keyboardListener.addPropertyChangeListener( listener );
+
+    for( final var listener : listeners ) {
+      keyboardListener.addSwitchListener( listener );
+    }
+
     keyboardListener.initModifiers();
+    return keyboardListener;
+  }
+
+  /**
+   * Writes all captured events to a journal, if requested, which is closed
+   * when the application exits.
+   */
+  private void initRecorder() {
+    getUserSettings().getRecordPath().ifPresent( path -> {
+      try {
+        final var recorder = new JournalRecorder( path );
+
+        addNativeKeyListener( recorder );
+        addNativeMouseListener( recorder );
+        addNativeMouseWheelListener( recorder );
+
+        Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+          try {
+            recorder.close();
+          } catch( final IOException ex ) {
+            ex.printStackTrace();
+          }
+        } ) );
+      } catch( final IOException ex ) {
+        rethrow( ex );
+      }
+    } );
+  }
+
+  /**
+   * Plays back a recorded journal on a separate thread, in place of the
+   * native hook, then writes the playback throughput to standard output.
+   *
+   * @param path     The journal to play back.
+   * @param keyboard Receives the recorded keyboard events.
+   * @param mouse    Receives the recorded mouse events.
+   */
+  private void initReplay(
+    final Path path,
+    final KeyboardListener keyboard,
+    final MouseListener mouse ) {
+    final var settings = getUserSettings();
+
+    try {
+      final var replayer = new JournalReplayer(
+        path, settings.getReplaySpeed(), keyboard, mouse );
+      final var loops = settings.getReplayLoops();
+
+      final var thread = new Thread( () -> {
+        for( int i = 0; i < loops; i++ ) {
+          replayer.run();
+        }
+
+        System.out.println( replayer );
+      }, "replay" );
+
+      thread.setDaemon( true );
+      thread.start();
+    } catch( final IOException ex ) {
+      rethrow( ex );
+    }
   }
 
   private void initDebugListener() {
@@ -214,17 +577,12 @@ public final class KmCaster extends JFrame {
    *
    * @param args Unused.
    */
-  public static void main( final String[] args )
-    throws NativeHookException, IOException, URISyntaxException {
-    initFonts();
-    disableNativeHookLogger();
-    registerNativeHook();
+  public static void main( final String[] args ) {
+    final var startup = new Startup();
 
-    while( !isNativeHookRegistered() ) {
-      Thread.yield();
-    }
+    disableNativeHookLogger();
 
-    final var kc = new KmCaster();
+    final var kc = new KmCaster( startup );
     final var parser = new CommandLine( kc.getUserSettings() );
     parser.setColorScheme( createColourScheme() );
 
@@ -232,7 +590,7 @@ public final class KmCaster extends JFrame {
       final var exitCode = parser.execute( args );
       final var parseResult = parser.getParseResult();
 
-      if( parseResult.isUsageHelpRequested() ) {
+      if( parseResult == null || parseResult.isUsageHelpRequested() ) {
         System.exit( exitCode );
       }
     } );
@@ -34,6 +34,21 @@ public enum LabelConfig {
   private final int mHorizontalAlign;
   private final int mVerticalAlign;
 
+  /**
+   * Maps {@link HardwareSwitch} ordinals to their single-label configuration,
+   * or {@code null} for switches without a dedicated label.
+   */
+  private static final LabelConfig[] SWITCH_LABELS =
+    new LabelConfig[ HardwareSwitch.values().length ];
+
+  static {
+    for( final var lc : values() ) {
+      lc.getHardwareSwitch().ifPresent(
+        hwSwitch -> SWITCH_LABELS[ hwSwitch.ordinal() ] = lc
+      );
+    }
+  }
+
   /**
    * Centres the label vertically and horizontally.
    */
@@ -78,13 +93,13 @@ public enum LabelConfig {
   }
 
   static LabelConfig valueFrom( final HardwareSwitch hwSwitch ) {
-    for( final var lc : values() ) {
-      if( lc.isHardwareSwitch( hwSwitch ) ) {
-        return lc;
-      }
+    final var lc = SWITCH_LABELS[ hwSwitch.ordinal() ];
+
+    if( lc == null ) {
+      throw new NoSuchElementException( hwSwitch.toTitleCase() );
     }
 
-    throw new NoSuchElementException( hwSwitch.toTitleCase() );
+    return lc;
   }
 
   /**
@@ -133,9 +148,4 @@ public enum LabelConfig {
   static int size() {
     return values().length;
   }
-
-  private boolean isHardwareSwitch( final HardwareSwitch hwSwitch ) {
-    final var os = getHardwareSwitch();
-    return os.isPresent() && os.get() == hwSwitch;
-  }
 }
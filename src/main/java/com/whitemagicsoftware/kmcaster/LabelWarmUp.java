@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.ui.AutofitLabel;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static javax.swing.SwingUtilities.invokeLater;
+
+/**
+ * Responsible for preparing labels before they are first shown, so that the
+ * first press of a key costs the same as later presses. Fonts are fitted on
+ * a background thread; text is then rendered on the event dispatch thread,
+ * a few labels at a time, so that input events are not held up.
+ */
+final class LabelWarmUp {
+  /**
+   * Number of labels rendered per turn on the event dispatch thread.
+   */
+  private static final int BATCH_SIZE = 8;
+
+  private final List<AutofitLabel> mLabels;
+  private final double mScale;
+
+  /**
+   * Prepares to warm up the given labels.
+   *
+   * @param labels Detached labels, created on the event dispatch thread.
+   * @param scale  The ratio of device pixels to label pixels.
+   */
+  LabelWarmUp( final List<AutofitLabel> labels, final double scale ) {
+    mLabels = labels;
+    mScale = scale;
+  }
+
+  /**
+   * Starts fitting fonts in the background, followed by rendering text.
+   *
+   * @param startup Runs the background task and records when each stage
+   *                completes.
+   * @return A future that completes once every label has been prepared.
+   */
+  CompletableFuture<Void> start( final Startup startup ) {
+    final var rendered = new CompletableFuture<Void>();
+
+    startup
+      .run( "label-fit", () -> mLabels.forEach( AutofitLabel::prefit ) )
+      .whenComplete( ( unused, ex ) -> {
+        if( ex == null ) {
+          invokeLater( () -> render( 0, startup, rendered ) );
+        }
+        else {
+          rendered.completeExceptionally( ex );
+        }
+      } );
+
+    return rendered;
+  }
+
+  /**
+   * Renders a batch of labels, then queues the next batch behind any
+   * pending events.
+   */
+  private void render(
+    final int from,
+    final Startup startup,
+    final CompletableFuture<Void> rendered ) {
+    final var to = Math.min( from + BATCH_SIZE, mLabels.size() );
+
+    try {
+      for( int i = from; i < to; i++ ) {
+        mLabels.get( i ).prerender( mScale );
+      }
+    } catch( final RuntimeException ex ) {
+      rendered.completeExceptionally( ex );
+      return;
+    }
+
+    if( to < mLabels.size() ) {
+      invokeLater( () -> render( to, startup, rendered ) );
+    }
+    else {
+      startup.mark( "label-render" );
+      rendered.complete( null );
+    }
+  }
+}
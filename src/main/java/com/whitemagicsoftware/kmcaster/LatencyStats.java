@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.util.LatencyHistogram;
+
+import java.io.PrintStream;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Responsible for recording how long each stage takes between a physical
+ * key press (or mouse event) and the updated image reaching the screen.
+ * Recording is disabled by default, in which case it costs one field read.
+ */
+public final class LatencyStats {
+  /**
+   * Defines the measured intervals along the event path.
+   */
+  public enum Stage {
+    /**
+     * From the native event timestamp to the dispatcher firing the event.
+     * The native timestamp has millisecond resolution.
+     */
+    HOOK_TO_FIRE( "hook-to-fire" ),
+
+    /**
+     * From the dispatcher firing the event to the start of the user
+     * interface update on the event dispatch thread.
+     */
+    FIRE_TO_UPDATE( "fire-to-update" ),
+
+    /**
+     * From the start of the user interface update to the end of painting
+     * the changed hardware component.
+     */
+    UPDATE_TO_PAINT( "update-to-paint" );
+
+    private final String mName;
+
+    Stage( final String name ) {
+      mName = name;
+    }
+
+    @Override
+    public String toString() {
+      return mName;
+    }
+  }
+
+  private static final Stage[] STAGES = Stage.values();
+
+  private static final LatencyHistogram[] HISTOGRAMS =
+    new LatencyHistogram[ STAGES.length ];
+
+  static {
+    for( int i = 0; i < HISTOGRAMS.length; i++ ) {
+      HISTOGRAMS[ i ] = new LatencyHistogram();
+    }
+  }
+
+  private static volatile boolean sEnabled;
+
+  /**
+   * Starts recording latencies.
+   */
+  public static void enable() {
+    sEnabled = true;
+  }
+
+  /**
+   * Answers whether latencies are being recorded.
+   *
+   * @return {@code true} when the user has requested statistics.
+   */
+  public static boolean isEnabled() {
+    return sEnabled;
+  }
+
+  /**
+   * Records the duration of a stage, if recording is enabled.
+   *
+   * @param stage The interval that was measured.
+   * @param nanos The duration of the interval, in nanoseconds.
+   */
+  public static void record( final Stage stage, final long nanos ) {
+    if( sEnabled ) {
+      HISTOGRAMS[ stage.ordinal() ].record( nanos );
+    }
+  }
+
+  /**
+   * Writes the number of samples and the median, 99th, and 99.9th percentile
+   * latencies for every stage.
+   *
+   * @param out The stream to write the report to.
+   */
+  public static void report( final PrintStream out ) {
+    out.println( format( "%-16s %9s %10s %10s %10s %10s",
+                         "Latency (µs)", "count", "p50", "p99", "p99.9", "max" ) );
+
+    for( final var stage : STAGES ) {
+      final var h = HISTOGRAMS[ stage.ordinal() ];
+
+      out.println( format( "%-16s %9d %10.1f %10.1f %10.1f %10.1f",
+                           stage,
+                           h.getCount(),
+                           micros( h.getValueAtPercentile( 50 ) ),
+                           micros( h.getValueAtPercentile( 99 ) ),
+                           micros( h.getValueAtPercentile( 99.9 ) ),
+                           micros( h.getMax() ) ) );
+    }
+  }
+
+  private static double micros( final long nanos ) {
+    return nanos / (double) MICROSECONDS.toNanos( 1 );
+  }
+
+  /**
+   * Private, empty constructor.
+   */
+  private LatencyStats() {
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.util.IntHashMap;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Responsible for providing a mouse image for any combination of held
+ * buttons and scroll directions. Each combination is composed the first
+ * time it is requested by copying, onto the released mouse, the pixels
+ * where each held switch's image differs from the released mouse; showing
+ * any combination afterwards is a single image copy.
+ * <p>
+ * Combinations are identified by a bitmask having bit
+ * {@link HardwareSwitch#ordinal()} set for each held switch. This must only
+ * be used on the event dispatch thread.
+ * </p>
+ */
+public final class MouseCombinations {
+  private final Sprite mReleased;
+  private final Map<HardwareSwitch, Sprite> mPressed;
+  private final BiFunction<Integer, Integer, BufferedImage> mFactory;
+
+  /**
+   * Composed images, keyed by bitmask; created on first use.
+   */
+  private final IntHashMap<Sprite> mCombinations = new IntHashMap<>();
+
+  /**
+   * Pixels of the released mouse, loaded when first composing.
+   */
+  private int[] mReleasedPixels;
+
+  /**
+   * Creates an empty set of combinations.
+   *
+   * @param released The mouse with no switches held.
+   * @param pressed  The mouse with each single switch held.
+   * @param factory  Creates a blank image, given its width and height, in
+   *                 the pixel format for composed images.
+   */
+  MouseCombinations(
+    final Sprite released,
+    final Map<HardwareSwitch, Sprite> pressed,
+    final BiFunction<Integer, Integer, BufferedImage> factory ) {
+    mReleased = released;
+    mPressed = pressed;
+    mFactory = factory;
+    putSingles();
+  }
+
+  /**
+   * Returns the bit that represents the given switch being held.
+   *
+   * @param hwSwitch The mouse switch.
+   * @return A bitmask with a single bit set.
+   */
+  public static int mask( final HardwareSwitch hwSwitch ) {
+    return 1 << hwSwitch.ordinal();
+  }
+
+  /**
+   * Returns the image showing every switch in the given bitmask held.
+   *
+   * @param mask Bits created using {@link #mask(HardwareSwitch)}; bits for
+   *             switches without an image are ignored.
+   * @return The mouse with the switches held.
+   */
+  public Sprite get( final int mask ) {
+    var sprite = mCombinations.get( mask );
+
+    if( sprite == null ) {
+      sprite = compose( mask );
+      mCombinations.put( mask, sprite );
+    }
+
+    return sprite;
+  }
+
+  /**
+   * Forgets every composed image, keeping the images of single switches.
+   * Images are composed again when next requested.
+   */
+  public void clear() {
+    mCombinations.clear();
+    mReleasedPixels = null;
+    putSingles();
+  }
+
+  private void putSingles() {
+    mCombinations.put( 0, mReleased );
+
+    for( final var entry : mPressed.entrySet() ) {
+      mCombinations.put( mask( entry.getKey() ), entry.getValue() );
+    }
+  }
+
+  private Sprite compose( final int mask ) {
+    if( mReleasedPixels == null ) {
+      mReleasedPixels = mReleased.getPixels();
+    }
+
+    final var released = mReleasedPixels;
+    final var pixels = released.clone();
+
+    for( final var entry : mPressed.entrySet() ) {
+      if( (mask & mask( entry.getKey() )) != 0 ) {
+        final var pressed = entry.getValue().getPixels();
+
+        for( int i = 0; i < pixels.length; i++ ) {
+          if( pressed[ i ] != released[ i ] ) {
+            pixels[ i ] = pressed[ i ];
+          }
+        }
+      }
+    }
+
+    final var w = mReleased.getPixelWidth();
+    final var h = mReleased.getPixelHeight();
+    final var image = mFactory.apply( w, h );
+    image.setRGB( 0, 0, w, h, pixels, 0, w );
+
+    return new Sprite( image, new Rectangle( w, h ),
+                       mReleased.getScale(), mReleased.getPixelScale() );
+  }
+}
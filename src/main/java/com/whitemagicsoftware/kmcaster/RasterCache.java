@@ -0,0 +1,412 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.ui.DimensionTuple;
+import com.whitemagicsoftware.kmcaster.ui.ScalableDimension;
+import com.whitemagicsoftware.kmcaster.util.Pair;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.whitemagicsoftware.kmcaster.ui.Constants.RENDERING_HINTS;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.lang.String.format;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static org.apache.commons.lang3.SystemUtils.*;
+
+/**
+ * Responsible for persisting rasterized vector graphics between launches, so
+ * that a warm start need not parse or render any SVG files. Each entry is a
+ * file of premultiplied ARGB pixels, preceded by the image's source and
+ * scaled dimensions.
+ * <p>
+ * Entries are named after a hash of the SVG file's contents, the requested
+ * dimensions, and the rendering hints, so changing any of those produces a
+ * new entry rather than a stale image. Entries that have not been used for
+ * {@link #MAX_AGE_DAYS} days are deleted, as are the least recently used
+ * entries when the cache exceeds its size limit.
+ * </p>
+ * <p>
+ * The cache is an optimization: any failure to read or write an entry is
+ * treated as a cache miss.
+ * </p>
+ */
+public final class RasterCache {
+  /**
+   * Identifies the entry file format, written as the first four bytes.
+   */
+  private static final int MAGIC = 0x4B4D4352;
+
+  /**
+   * Incremented whenever the entry format or the key changes.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * Magic, version, source size, scaled size, and image size, as integers.
+   */
+  private static final int HEADER_BYTES = 8 * Integer.BYTES;
+
+  private static final String SUFFIX = ".raster";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final long MAX_AGE_DAYS = 30;
+
+  /**
+   * Rendering hints in a stable order, because the iteration order of
+   * {@link Map#ofEntries} differs between runs.
+   */
+  private static final String HINTS = RENDERING_HINTS
+    .entrySet()
+    .stream()
+    .map( e -> e.getKey() + "=" + e.getValue() )
+    .sorted()
+    .reduce( "", ( a, b ) -> a + ';' + b );
+
+  private final Path mDirectory;
+  private final long mMaxBytes;
+
+  /**
+   * Creates a cache that stores entries in the given directory.
+   *
+   * @param directory Where entries are stored, created if missing; if
+   *                  {@code null}, nothing is cached.
+   * @param maxBytes  Size limit for all entries, zero disables caching.
+   */
+  public RasterCache( final Path directory, final long maxBytes ) {
+    mDirectory = maxBytes > 0 ? directory : null;
+    mMaxBytes = maxBytes;
+  }
+
+  /**
+   * Creates a cache in the platform's per-user cache directory.
+   *
+   * @param maxBytes Size limit for all entries, zero disables caching.
+   * @return A cache that is disabled if there is no cache directory.
+   */
+  public static RasterCache open( final long maxBytes ) {
+    return new RasterCache( getCacheDirectory(), maxBytes );
+  }
+
+  /**
+   * Computes the key for an entry. This reads (but does not parse) the SVG
+   * resource.
+   *
+   * @param resource The path to the SVG resource.
+   * @param dstDim   The dimensions requested when rasterizing.
+   * @return The key for {@link #load(String)} and {@link #store}, or
+   * {@code null} if caching is disabled or the resource cannot be read.
+   */
+  public String key( final String resource, final Dimension dstDim ) {
+    if( mDirectory == null ) {
+      return null;
+    }
+
+    try( final InputStream in = getClass().getResourceAsStream( resource ) ) {
+      if( in == null ) {
+        return null;
+      }
+
+      final var digest = MessageDigest.getInstance( "SHA-256" );
+      digest.update( in.readAllBytes() );
+      digest.update( ByteBuffer
+                       .allocate( 3 * Integer.BYTES )
+                       .putInt( VERSION )
+                       .putInt( dstDim.width )
+                       .putInt( dstDim.height )
+                       .array() );
+      digest.update( HINTS.getBytes( StandardCharsets.UTF_8 ) );
+
+      return format( "%064x", new BigInteger( 1, digest.digest() ) );
+    } catch( final IOException | NoSuchAlgorithmException ex ) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads an image and its scale from the cache.
+   *
+   * @param key The value returned from {@link #key(String, Dimension)}.
+   * @return The cached image and its scale, or empty on a cache miss.
+   */
+  public Optional<Pair<Image, DimensionTuple>> load( final String key ) {
+    if( key == null ) {
+      return Optional.empty();
+    }
+
+    final var path = entry( key );
+
+    try {
+      // Read the entry outright rather than mapping it: the pixels are copied
+      // immediately, and a mapping prevents Windows from moving or deleting
+      // the file until the buffer is garbage collected.
+      final var bytes = Files.readAllBytes( path );
+      final var size = bytes.length;
+
+      if( size < HEADER_BYTES ) {
+        throw new IOException( "Truncated: " + path );
+      }
+
+      final var ints = ByteBuffer.wrap( bytes ).asIntBuffer();
+
+      if( ints.get() != MAGIC || ints.get() != VERSION ) {
+        throw new IOException( "Unknown format: " + path );
+      }
+
+      final var src = new ScalableDimension( ints.get(), ints.get() );
+      final var dst = new ScalableDimension( ints.get(), ints.get() );
+      final var w = ints.get();
+      final var h = ints.get();
+
+      if( w <= 0 || h <= 0 || size != HEADER_BYTES + 4L * w * h ) {
+        throw new IOException( "Corrupt: " + path );
+      }
+
+      final var pixels = new int[ w * h ];
+      ints.get( pixels );
+
+      final var image = new BufferedImage( w, h, TYPE_INT_ARGB_PRE );
+      image.getRaster().setDataElements( 0, 0, w, h, pixels );
+
+      // Record the use so that eviction discards the least recently used.
+      Files.setLastModifiedTime(
+        path, FileTime.fromMillis( System.currentTimeMillis() ) );
+
+      return Optional.of( new Pair<>( image, new DimensionTuple( src, dst ) ) );
+    } catch( final NoSuchFileException ex ) {
+      return Optional.empty();
+    } catch( final IOException | RuntimeException ex ) {
+      delete( path );
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Writes an image and its scale to the cache. The image is converted to
+   * premultiplied ARGB, which is also the format returned by
+   * {@link #load(String)}, so that cold and warm starts draw the same image.
+   *
+   * @param key   The value returned from {@link #key(String, Dimension)}.
+   * @param image The rasterized image.
+   * @param scale The source and scaled dimensions of the image.
+   * @return The image in the cached format.
+   */
+  public BufferedImage store(
+    final String key, final BufferedImage image, final DimensionTuple scale ) {
+    final var premultiplied = toPremultiplied( image );
+
+    if( key == null ) {
+      return premultiplied;
+    }
+
+    final var w = premultiplied.getWidth();
+    final var h = premultiplied.getHeight();
+    final var pixels = (int[]) premultiplied
+      .getRaster()
+      .getDataElements( 0, 0, w, h, null );
+    final var src = scale.getKey();
+    final var dst = scale.getValue();
+    final var buffer = ByteBuffer.allocate( HEADER_BYTES + 4 * pixels.length );
+
+    buffer.putInt( MAGIC ).putInt( VERSION )
+          .putInt( src.width ).putInt( src.height )
+          .putInt( dst.width ).putInt( dst.height )
+          .putInt( w ).putInt( h );
+    buffer.asIntBuffer().put( pixels );
+    buffer.rewind();
+
+    Path temp = null;
+
+    try {
+      Files.createDirectories( mDirectory );
+
+      // Write to a temporary file first so that a concurrently launched
+      // instance never reads a partially written entry.
+      temp = Files.createTempFile( mDirectory, key, TEMP_SUFFIX );
+
+      try( final var channel = FileChannel.open( temp, WRITE ) ) {
+        while( buffer.hasRemaining() ) {
+          channel.write( buffer );
+        }
+      }
+
+      move( temp, entry( key ) );
+    } catch( final IOException ex ) {
+      if( temp != null ) {
+        delete( temp );
+      }
+    }
+
+    return premultiplied;
+  }
+
+  /**
+   * Deletes entries that have not been used recently, then deletes the
+   * least recently used entries until the cache fits within its size limit.
+   */
+  public void evict() {
+    if( mDirectory == null || !Files.isDirectory( mDirectory ) ) {
+      return;
+    }
+
+    final var expired = System.currentTimeMillis() - DAYS.toMillis( MAX_AGE_DAYS );
+    final List<Pair<Path, FileTime>> entries = new ArrayList<>();
+
+    try( final var files = Files.newDirectoryStream( mDirectory ) ) {
+      for( final var path : files ) {
+        final var name = path.getFileName().toString();
+
+        if( !name.endsWith( SUFFIX ) && !name.endsWith( TEMP_SUFFIX ) ) {
+          continue;
+        }
+
+        final var modified = Files.getLastModifiedTime( path );
+
+        if( modified.toMillis() < expired ) {
+          delete( path );
+        }
+        else if( name.endsWith( SUFFIX ) ) {
+          entries.add( new Pair<>( path, modified ) );
+        }
+      }
+    } catch( final IOException ex ) {
+      return;
+    }
+
+    entries.sort( Comparator.comparing( Pair<Path, FileTime>::getValue ).reversed() );
+
+    var total = 0L;
+
+    for( final var entry : entries ) {
+      final var path = entry.getKey();
+
+      try {
+        total += Files.size( path );
+      } catch( final IOException ex ) {
+        continue;
+      }
+
+      if( total > mMaxBytes ) {
+        delete( path );
+      }
+    }
+  }
+
+  /**
+   * Returns the directory for cached files, following each platform's
+   * conventions.
+   *
+   * @return The cache directory, which might not exist, or {@code null} if
+   * the user's home directory is unknown.
+   */
+  private static Path getCacheDirectory() {
+    if( IS_OS_WINDOWS ) {
+      final var local = System.getenv( "LOCALAPPDATA" );
+      return local == null ? null : Path.of( local, "KmCaster", "cache" );
+    }
+
+    final var home = USER_HOME;
+
+    if( home == null ) {
+      return null;
+    }
+
+    if( IS_OS_MAC ) {
+      return Path.of( home, "Library", "Caches", "KmCaster" );
+    }
+
+    final var xdg = System.getenv( "XDG_CACHE_HOME" );
+
+    return xdg == null || xdg.isBlank()
+      ? Path.of( home, ".cache", "kmcaster" )
+      : Path.of( xdg, "kmcaster" );
+  }
+
+  private Path entry( final String key ) {
+    return mDirectory.resolve( key + SUFFIX );
+  }
+
+  /**
+   * Converts an image to premultiplied ARGB, the format used by cached and
+   * pre-rasterized images.
+   *
+   * @param image The image to convert.
+   * @return The given image if already premultiplied ARGB, otherwise a copy.
+   */
+  static BufferedImage toPremultiplied( final BufferedImage image ) {
+    if( image.getType() == TYPE_INT_ARGB_PRE ) {
+      return image;
+    }
+
+    final var w = image.getWidth();
+    final var h = image.getHeight();
+    final var result = new BufferedImage( w, h, TYPE_INT_ARGB_PRE );
+    final var graphics = result.createGraphics();
+
+    graphics.setComposite( AlphaComposite.Src );
+    graphics.drawImage( image, 0, 0, null );
+    graphics.dispose();
+
+    return result;
+  }
+
+  private static void move( final Path source, final Path target )
+    throws IOException {
+    try {
+      Files.move( source, target, ATOMIC_MOVE, REPLACE_EXISTING );
+    } catch( final AtomicMoveNotSupportedException ex ) {
+      Files.move( source, target, REPLACE_EXISTING );
+    }
+  }
+
+  private static void delete( final Path path ) {
+    try {
+      Files.deleteIfExists( path );
+    } catch( final IOException ignored ) {
+      // The entry will be evicted later.
+    }
+  }
+}
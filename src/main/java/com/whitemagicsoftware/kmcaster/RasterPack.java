@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.ui.DimensionTuple;
+import com.whitemagicsoftware.kmcaster.ui.ScalableDimension;
+import com.whitemagicsoftware.kmcaster.util.Pair;
+import picocli.CommandLine;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.whitemagicsoftware.kmcaster.HardwareSwitch.keyboardSwitches;
+import static com.whitemagicsoftware.kmcaster.RasterCache.toPremultiplied;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.lang.String.format;
+
+/**
+ * Responsible for reading and writing packs of images that were rasterized
+ * when the application was built, one pack per standard application height.
+ * Loading a pack takes a single read and does not touch the SVG library.
+ * <p>
+ * A pack starts with a magic number, a version, the application dimensions
+ * it was rasterized for, and the number of images. Each image follows as its
+ * resource path, source and scaled dimensions, size, then premultiplied ARGB
+ * pixels; all numbers are big-endian integers.
+ * </p>
+ */
+final class RasterPack {
+  /**
+   * Identifies the pack file format, written as the first four bytes.
+   */
+  private static final int MAGIC = 0x4B4D4350;
+
+  /**
+   * Incremented whenever the pack format changes.
+   */
+  private static final int VERSION = 1;
+
+  private static final String DIR_PACKS = "/packs";
+
+  /**
+   * Reads the pack rasterized for the given application dimensions.
+   *
+   * @param appDimensions The application's width and height, in display
+   *                      pixels.
+   * @return The images keyed by resource path (without the file name
+   * extension), or empty if there is no pack for the dimensions.
+   */
+  static Optional<Map<String, Pair<Image, DimensionTuple>>> load(
+    final Dimension appDimensions ) {
+    final var resource = packPath( appDimensions.height );
+
+    try( final var in = RasterPack.class.getResourceAsStream( resource ) ) {
+      return in == null
+        ? Optional.empty()
+        : Optional.ofNullable(
+        read( ByteBuffer.wrap( in.readAllBytes() ), appDimensions ) );
+    } catch( final IOException | RuntimeException ex ) {
+      // Rasterize the images instead.
+      return Optional.empty();
+    }
+  }
+
+  private static Map<String, Pair<Image, DimensionTuple>> read(
+    final ByteBuffer buffer, final Dimension appDimensions ) {
+    if( buffer.getInt() != MAGIC ||
+      buffer.getInt() != VERSION ||
+      buffer.getInt() != appDimensions.width ||
+      buffer.getInt() != appDimensions.height ) {
+      return null;
+    }
+
+    final var count = buffer.getInt();
+    final var images = new HashMap<String, Pair<Image, DimensionTuple>>();
+
+    for( int i = 0; i < count; i++ ) {
+      final var name = new byte[ buffer.getInt() ];
+      buffer.get( name );
+
+      final var src = new ScalableDimension( buffer.getInt(), buffer.getInt() );
+      final var dst = new ScalableDimension( buffer.getInt(), buffer.getInt() );
+      final var w = buffer.getInt();
+      final var h = buffer.getInt();
+      final var pixels = new int[ w * h ];
+
+      buffer.asIntBuffer().get( pixels );
+      buffer.position( buffer.position() + pixels.length * Integer.BYTES );
+
+      final var image = new BufferedImage( w, h, TYPE_INT_ARGB_PRE );
+      image.getRaster().setDataElements( 0, 0, w, h, pixels );
+
+      images.put(
+        new String( name, StandardCharsets.UTF_8 ),
+        new Pair<>( image, new DimensionTuple( src, dst ) ) );
+    }
+
+    return images;
+  }
+
+  /**
+   * Rasterizes every application image at each of the given heights and
+   * writes one pack per height. This is run by the build.
+   *
+   * @param args The output directory, followed by the heights, in pixels.
+   * @throws Exception Could not rasterize the images or write a pack.
+   */
+  public static void main( final String[] args ) throws Exception {
+    final var directory = Path.of( args[ 0 ] );
+    final var rasterizer = new SvgRasterizer();
+    final var paths = new LinkedHashSet<>(
+      HardwareImages.imagePaths( keyboardSwitches( true ) ) );
+
+    Files.createDirectories( directory );
+
+    for( int i = 1; i < args.length; i++ ) {
+      final var settings = new Settings();
+      new CommandLine( settings ).parseArgs( "--proportion", args[ i ] );
+
+      final var appDimensions = settings.createAppDimensions();
+      final var file = directory.resolve(
+        Path.of( packPath( appDimensions.height ) ).getFileName() );
+
+      try( final var out = new DataOutputStream(
+        new BufferedOutputStream( Files.newOutputStream( file ) ) ) ) {
+        out.writeInt( MAGIC );
+        out.writeInt( VERSION );
+        out.writeInt( appDimensions.width );
+        out.writeInt( appDimensions.height );
+        out.writeInt( paths.size() );
+
+        for( final var path : paths ) {
+          final var raster = rasterizer.rasterize(
+            format( "%s.svg", path ), appDimensions );
+          final var image = toPremultiplied( raster.getKey() );
+          final var scale = raster.getValue();
+          final var w = image.getWidth();
+          final var h = image.getHeight();
+          final var pixels = (int[]) image
+            .getRaster()
+            .getDataElements( 0, 0, w, h, null );
+          final var name = path.getBytes( StandardCharsets.UTF_8 );
+
+          out.writeInt( name.length );
+          out.write( name );
+          out.writeInt( scale.getKey().width );
+          out.writeInt( scale.getKey().height );
+          out.writeInt( scale.getValue().width );
+          out.writeInt( scale.getValue().height );
+          out.writeInt( w );
+          out.writeInt( h );
+
+          for( final var pixel : pixels ) {
+            out.writeInt( pixel );
+          }
+        }
+      }
+    }
+  }
+
+  private static String packPath( final int height ) {
+    return format( "%s/raster-%d.pack", DIR_PACKS, height );
+  }
+
+  private RasterPack() {
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.util.Pair;
+
+import javax.swing.Timer;
+import java.awt.*;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static javax.swing.SwingUtilities.invokeLater;
+
+/**
+ * Responsible for showing images rasterized for the application height and
+ * for the scale of the display that the window is on. The height changes
+ * when the user turns the mouse wheel over the window while holding Ctrl;
+ * the display scale changes when the window moves onto another display.
+ * <p>
+ * Images for a new height or scale are built in the background, without
+ * creating any components. Until they are ready, the previous images
+ * continue to be drawn; the window's components then switch to the new
+ * images together, on the event dispatch thread. Images for each display
+ * scale are kept in case the window returns to that display; images for
+ * other heights are discarded once replaced.
+ * </p>
+ */
+final class ScaledImageSets
+  implements PropertyChangeListener, MouseWheelListener {
+  /**
+   * Milliseconds to wait after the mouse wheel stops turning before
+   * building images for the new height.
+   */
+  private static final int RESIZE_DELAY = 250;
+
+  private final Window mWindow;
+  private final Settings mSettings;
+  private final EventHandler mEventHandler;
+
+  /**
+   * Called after the window has been resized to a new height, such as to
+   * prepare labels for the new size.
+   */
+  private final Runnable mResizeListener;
+
+  /**
+   * Images built, or being built, keyed by display scale and height.
+   */
+  private final Map<Pair<Double, Integer>, CompletableFuture<HardwareImages>>
+    mSets = new HashMap<>();
+
+  /**
+   * Delays building images until the height stops changing.
+   */
+  private final Timer mResizeTimer;
+
+  /**
+   * Display that the window most recently moved onto.
+   */
+  private GraphicsConfiguration mConfiguration;
+
+  /**
+   * Display scale and height of the images to show.
+   */
+  private double mScale;
+  private int mHeight;
+
+  /**
+   * Height of the images being shown.
+   */
+  private int mShownHeight;
+
+  /**
+   * Prepares to switch the given images when the window changes displays or
+   * the user resizes the application.
+   *
+   * @param window         The window showing the images.
+   * @param settings       The image preferences.
+   * @param images         The images built for the window's current display.
+   * @param eventHandler   Owns the components and labels that draw the
+   *                       images.
+   * @param resizeListener Called on the event dispatch thread after the
+   *                       window is resized.
+   */
+  ScaledImageSets(
+    final Window window, final Settings settings,
+    final HardwareImages images, final EventHandler eventHandler,
+    final Runnable resizeListener ) {
+    mWindow = window;
+    mSettings = settings;
+    mEventHandler = eventHandler;
+    mResizeListener = resizeListener;
+    mConfiguration = window.getGraphicsConfiguration();
+    mScale = images.getPixelScale();
+    mHeight = mShownHeight = images.getAppDimensions().height;
+    mSets.put( key(), CompletableFuture.completedFuture( images ) );
+
+    mResizeTimer = new Timer( RESIZE_DELAY, ( event ) -> request() );
+    mResizeTimer.setRepeats( false );
+  }
+
+  /**
+   * Called on the event dispatch thread when the window's graphics
+   * configuration changes, such as after being dragged onto another
+   * display.
+   *
+   * @param e Provides the new graphics configuration.
+   */
+  @Override
+  public void propertyChange( final PropertyChangeEvent e ) {
+    mConfiguration = (GraphicsConfiguration) e.getNewValue();
+
+    final var scale = HardwareImages.pixelScale( mConfiguration );
+
+    if( scale != mScale ) {
+      mScale = scale;
+      request();
+    }
+  }
+
+  /**
+   * Grows or shrinks the application by a tenth of its height for each
+   * notch the mouse wheel turns while Ctrl is held.
+   *
+   * @param e The mouse wheel event over the window.
+   */
+  @Override
+  public void mouseWheelMoved( final MouseWheelEvent e ) {
+    if( !e.isControlDown() || e.getWheelRotation() == 0 ) {
+      return;
+    }
+
+    final var step = Math.max( 1, mHeight / 10 );
+    final var height = mHeight - e.getWheelRotation() * step;
+    final var screen = mConfiguration == null
+      ? Integer.MAX_VALUE
+      : mConfiguration.getBounds().height;
+
+    mHeight = mSettings.createAppDimensions( Math.min( height, screen ) )
+                       .height;
+    mResizeTimer.restart();
+  }
+
+  /**
+   * Builds the images for the current display scale and height, unless
+   * already built, then shows them if still wanted.
+   */
+  private void request() {
+    final var key = key();
+    final var configuration = mConfiguration;
+    final var dimensions = mSettings.createAppDimensions( mHeight );
+
+    mSets.computeIfAbsent( key, k -> CompletableFuture.supplyAsync(
+      () -> new HardwareImages( mSettings, configuration, dimensions ) ) )
+      .whenComplete( ( images, ex ) -> invokeLater( () -> {
+        if( ex != null ) {
+          mSets.remove( key );
+          ex.printStackTrace();
+        }
+        else if( key.equals( key() ) ) {
+          show( images );
+        }
+      } ) );
+  }
+
+  /**
+   * Switches every component to the given images, then lays out and
+   * repaints the window for any change in size.
+   *
+   * @param images The images for the current display scale and height.
+   */
+  private void show( final HardwareImages images ) {
+    final var height = images.getAppDimensions().height;
+
+    mEventHandler.showImages( images );
+    mWindow.pack();
+
+    if( height != mShownHeight ) {
+      mEventHandler.rescaleLabels( (double) height / mShownHeight );
+      mShownHeight = height;
+      discard( height );
+      mResizeListener.run();
+    }
+
+    mWindow.repaint();
+  }
+
+  /**
+   * Releases the images built for heights other than the given height, which
+   * are no longer shown.
+   *
+   * @param height The height of the images being shown.
+   */
+  private void discard( final int height ) {
+    final var iterator = mSets.entrySet().iterator();
+
+    while( iterator.hasNext() ) {
+      final var entry = iterator.next();
+
+      if( entry.getKey().getValue() != height ) {
+        iterator.remove();
+        entry.getValue().thenAccept( HardwareImages::dispose );
+      }
+    }
+  }
+
+  private Pair<Double, Integer> key() {
+    return new Pair<>( mScale, mHeight );
+  }
+}
@@ -30,12 +30,14 @@ package com.whitemagicsoftware.kmcaster;
 import picocli.CommandLine;
 
 import java.awt.*;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.Callable;
 
 import static java.awt.Font.*;
 import static java.util.Map.entry;
-import static javax.swing.SwingUtilities.invokeLater;
 
 @CommandLine.Command(
   name = "KmCaster",
@@ -76,6 +78,18 @@ public final class Settings implements Callable<Integer> {
   )
   private int mDelayKeyRegular = 250;
 
+  /**
+   * Draw the overlay from a dedicated thread instead of through Swing.
+   */
+  @CommandLine.Option(
+    names = {"--active-rendering"},
+    description =
+      "Draw the overlay from a rendering thread (${DEFAULT-VALUE})",
+    paramLabel = "Boolean",
+    defaultValue = "false"
+  )
+  private boolean mActiveRendering = false;
+
   /**
    * Milliseconds to wait before releasing (clearing) a mouse button.
    */
@@ -100,6 +114,30 @@ public final class Settings implements Callable<Integer> {
   )
   private String mBackgroundColour = "30303077";
 
+  /**
+   * Maximum size of rasterized images kept between launches, in megabytes.
+   */
+  @CommandLine.Option(
+    names = {"--cache-size"},
+    description =
+      "Image cache size limit, 0 to disable (${DEFAULT-VALUE} MB)",
+    paramLabel = "MB",
+    defaultValue = "64"
+  )
+  private int mRasterCacheSize = 64;
+
+  /**
+   * Draw the overlay through a single offscreen frame buffer.
+   */
+  @CommandLine.Option(
+    names = {"--compositor"},
+    description =
+      "Draw the overlay through one frame buffer (${DEFAULT-VALUE})",
+    paramLabel = "Boolean",
+    defaultValue = "false"
+  )
+  private boolean mCompositor = false;
+
   /**
    * Debugging for keystrokes.
    */
@@ -160,6 +198,43 @@ public final class Settings implements Callable<Integer> {
   )
   private int mGapVertical = 5;
 
+  /**
+   * Seconds without input before the application stops drawing.
+   */
+  @CommandLine.Option(
+    names = {"--idle"},
+    description =
+      "Sleep after no input, 0 to never sleep (${DEFAULT-VALUE} seconds)",
+    paramLabel = "s",
+    defaultValue = "30"
+  )
+  private int mIdleSeconds = 30;
+
+  /**
+   * Release rendered labels and composed images while sleeping.
+   */
+  @CommandLine.Option(
+    names = {"--idle-release"},
+    description =
+      "Release cached images while sleeping (${DEFAULT-VALUE})",
+    paramLabel = "Boolean",
+    defaultValue = "false"
+  )
+  private boolean mIdleRelease = false;
+
+  /**
+   * Pixel format of the images drawn onto the screen.
+   */
+  @CommandLine.Option(
+    names = {"--image-format"},
+    description =
+      "compatible, argb-pre, abgr, fastest (${DEFAULT-VALUE})",
+    paramLabel = "string",
+    defaultValue = "compatible",
+    converter = ImageFormatConverter.class
+  )
+  private ImageFormat mImageFormat = ImageFormat.COMPATIBLE;
+
   /**
    * Number of times to count a key press before displaying +.
    */
@@ -172,6 +247,20 @@ public final class Settings implements Callable<Integer> {
   )
   private int mKeyCount = 9;
 
+  /**
+   * Maximum size of rendered label text kept in memory, in megabytes. The
+   * cache is disabled by default because drawing a cached rendering was
+   * measured to be slower than drawing the text again.
+   */
+  @CommandLine.Option(
+    names = {"--label-cache-size"},
+    description =
+      "Label text cache size limit, 0 to disable (${DEFAULT-VALUE} MB)",
+    paramLabel = "MB",
+    defaultValue = "0"
+  )
+  private int mLabelCacheSize = 0;
+
   /**
    * Milliseconds to wait before releasing (clearing) any modifier key.
    */
@@ -184,6 +273,18 @@ public final class Settings implements Callable<Integer> {
   )
   private int mDelayKeyModifier = 150;
 
+  /**
+   * Maximum number of coalesced repaints per second.
+   */
+  @CommandLine.Option(
+    names = {"--max-fps"},
+    description =
+      "Maximum frame rate for releases and scrolling (${DEFAULT-VALUE} frames per second)",
+    paramLabel = "fps",
+    defaultValue = "60"
+  )
+  private int mMaxFps = 60;
+
   /**
    * Application height in pixels. Images are scaled to this height, maintaining
    * aspect ratio. The height constrains the width, so as long as the width
@@ -198,6 +299,52 @@ public final class Settings implements Callable<Integer> {
   )
   private int mHeight = 100;
 
+  /**
+   * File to write keyboard and mouse events into, for later playback.
+   */
+  @CommandLine.Option(
+    names = {"--record"},
+    description =
+      "Record keyboard and mouse events to a journal file",
+    paramLabel = "file"
+  )
+  private Path mRecordPath;
+
+  /**
+   * File to read keyboard and mouse events from, instead of the native hook.
+   */
+  @CommandLine.Option(
+    names = {"--replay"},
+    description =
+      "Play back a recorded journal file instead of capturing events",
+    paramLabel = "file"
+  )
+  private Path mReplayPath;
+
+  /**
+   * Number of times to play back the journal.
+   */
+  @CommandLine.Option(
+    names = {"--replay-loops"},
+    description =
+      "Number of times to play back the journal (${DEFAULT-VALUE})",
+    paramLabel = "count",
+    defaultValue = "1"
+  )
+  private int mReplayLoops = 1;
+
+  /**
+   * Playback speed multiplier, where zero plays back as fast as possible.
+   */
+  @CommandLine.Option(
+    names = {"--replay-speed"},
+    description =
+      "Playback speed multiplier, 0 for maximum (${DEFAULT-VALUE})",
+    paramLabel = "factor",
+    defaultValue = "1"
+  )
+  private double mReplaySpeed = 1;
+
   /**
    * Milliseconds to wait before releasing (clearing) a mouse scroll event.
    */
@@ -222,12 +369,35 @@ public final class Settings implements Callable<Integer> {
   )
   private boolean mSuper = false;
 
+  /**
+   * Seconds between latency reports, zero to report only on exit, or
+   * negative to disable latency recording.
+   */
+  @CommandLine.Option(
+    names = {"--stats"},
+    description =
+      "Report event latencies on exit, and every given number of seconds",
+    paramLabel = "s",
+    arity = "0..1",
+    fallbackValue = "0",
+    defaultValue = "-1"
+  )
+  private int mStatsInterval = -1;
+
   public Settings( final KmCaster kmCaster ) {
     assert kmCaster != null;
 
     mKmCaster = kmCaster;
   }
 
+  /**
+   * Creates settings that are not attached to an application window. This
+   * allows components to be created and measured without being displayed,
+   * such as when benchmarking; {@link #call()} must not be invoked.
+   */
+  Settings() {
+    mKmCaster = null;
+  }
 
   /**
    * Invoked after the command-line arguments are parsed to launch the
@@ -237,7 +407,7 @@ public final class Settings implements Callable<Integer> {
    */
   @Override
   public Integer call() {
-    invokeLater( mKmCaster::init );
+    mKmCaster.start();
     return 0;
   }
 
@@ -257,6 +427,58 @@ public final class Settings implements Callable<Integer> {
     return mDelayMouseScroll;
   }
 
+  public int getMaxFps() {
+    return mMaxFps < 1 ? 1 : mMaxFps;
+  }
+
+  public int getStatsInterval() {
+    return mStatsInterval;
+  }
+
+  public long getRasterCacheBytes() {
+    return mRasterCacheSize < 0 ? 0 : mRasterCacheSize * 1024L * 1024L;
+  }
+
+  public long getLabelCacheBytes() {
+    return mLabelCacheSize < 0 ? 0 : mLabelCacheSize * 1024L * 1024L;
+  }
+
+  public ImageFormat getImageFormat() {
+    return mImageFormat;
+  }
+
+  public boolean isCompositorEnabled() {
+    return mCompositor;
+  }
+
+  public boolean isActiveRenderingEnabled() {
+    return mActiveRendering;
+  }
+
+  public int getIdleSeconds() {
+    return mIdleSeconds < 0 ? 0 : mIdleSeconds;
+  }
+
+  public boolean isIdleReleaseEnabled() {
+    return mIdleRelease;
+  }
+
+  public Optional<Path> getRecordPath() {
+    return Optional.ofNullable( mRecordPath );
+  }
+
+  public Optional<Path> getReplayPath() {
+    return Optional.ofNullable( mReplayPath );
+  }
+
+  public double getReplaySpeed() {
+    return mReplaySpeed;
+  }
+
+  public int getReplayLoops() {
+    return mReplayLoops < 1 ? 1 : mReplayLoops;
+  }
+
   public int getKeyCount() {
     return mKeyCount < 2 ? 2 : mKeyCount;
   }
@@ -271,7 +493,21 @@ public final class Settings implements Callable<Integer> {
   }
 
   public Dimension createAppDimensions() {
-    return new Dimension( 1024 + getHeight(), getHeight() );
+    return createAppDimensions( getHeight() );
+  }
+
+  /**
+   * Returns the dimensions that images are scaled to fit for the given
+   * application height, such as when resizing the application while it runs.
+   *
+   * @param height The application height, in pixels; raised to the minimum
+   *               height if too small.
+   * @return The application width and height.
+   */
+  public Dimension createAppDimensions( final int height ) {
+    final var h = Math.max( height, MIN_HEIGHT_PX );
+
+    return new Dimension( 1024 + h, h );
   }
 
   /**
@@ -299,7 +535,27 @@ public final class Settings implements Callable<Integer> {
     return mDebug;
   }
 
+  public boolean isStatsEnabled() {
+    return mStatsInterval >= 0;
+  }
+
   public boolean isSuperEnabled() {
     return mSuper;
   }
+
+  /**
+   * Converts a command-line name into an {@link ImageFormat}, so that an
+   * unknown name is reported as a usage error instead of being ignored.
+   */
+  static final class ImageFormatConverter
+    implements CommandLine.ITypeConverter<ImageFormat> {
+    @Override
+    public ImageFormat convert( final String name ) {
+      final var names = Arrays.toString( ImageFormat.values() );
+
+      return ImageFormat.valueFrom( name ).orElseThrow(
+        () -> new CommandLine.TypeConversionException(
+          String.format( "'%s' is not one of %s", name, names ) ) );
+    }
+  }
 }
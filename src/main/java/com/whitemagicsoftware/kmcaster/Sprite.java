@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.ui.DimensionTuple;
+import com.whitemagicsoftware.kmcaster.ui.RenderSnapshot;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+
+/**
+ * Responsible for drawing one rasterized image from a region of a
+ * {@link SpriteAtlas}.
+ */
+public final class Sprite {
+  private final BufferedImage mAtlas;
+  private final Rectangle mBounds;
+  private final DimensionTuple mScale;
+
+  /**
+   * Ratio of atlas pixels to user space pixels, which is greater than one
+   * when rasterized for a high-resolution display.
+   */
+  private final double mPixelScale;
+
+  /**
+   * Creates a sprite for a region of an atlas image.
+   *
+   * @param atlas      The image containing the sprite's pixels.
+   * @param bounds     The sprite's location and size within the atlas.
+   * @param scale      The source and scaled dimensions of the sprite's
+   *                   vector graphic.
+   * @param pixelScale The ratio of atlas pixels to user space pixels.
+   */
+  Sprite( final BufferedImage atlas, final Rectangle bounds,
+          final DimensionTuple scale, final double pixelScale ) {
+    mAtlas = atlas;
+    mBounds = bounds;
+    mScale = scale;
+    mPixelScale = pixelScale;
+  }
+
+  /**
+   * Draws this sprite at the given location, copying each atlas pixel onto
+   * one display pixel.
+   *
+   * @param g        The graphics context to draw upon.
+   * @param x        The horizontal position of the sprite's upper-left corner.
+   * @param y        The vertical position of the sprite's upper-left corner.
+   * @param observer Notified as the atlas image is drawn.
+   */
+  public void draw(
+    final Graphics g, final int x, final int y, final ImageObserver observer ) {
+    final var b = mBounds;
+
+    if( mPixelScale == 1 ) {
+      g.drawImage(
+        mAtlas,
+        x, y, x + b.width, y + b.height,
+        b.x, b.y, b.x + b.width, b.y + b.height,
+        observer );
+    }
+    else {
+      toBlit( x, y ).draw( (Graphics2D) g );
+    }
+  }
+
+  /**
+   * Describes drawing this sprite at the given location, in the same way as
+   * {@link #draw(Graphics, int, int, ImageObserver)}.
+   *
+   * @param x The horizontal position on the overlay.
+   * @param y The vertical position on the overlay.
+   * @return A copy of the sprite's region of the atlas onto the overlay.
+   */
+  public RenderSnapshot.Blit toBlit( final int x, final int y ) {
+    final var b = mBounds;
+
+    return new RenderSnapshot.Blit(
+      mAtlas, x, y, mPixelScale, b.x, b.y, b.width, b.height );
+  }
+
+  /**
+   * Copies this sprite's pixels out of the atlas.
+   *
+   * @return Non-premultiplied ARGB pixels, row by row.
+   */
+  int[] getPixels() {
+    final var b = mBounds;
+    return mAtlas.getRGB( b.x, b.y, b.width, b.height, null, 0, b.width );
+  }
+
+  /**
+   * Returns the width at which the sprite is drawn.
+   *
+   * @return The width in user space, which is fewer pixels than the atlas
+   * holds on a high-resolution display.
+   */
+  public int getWidth() {
+    return (int) Math.round( mBounds.width / mPixelScale );
+  }
+
+  /**
+   * Returns the height at which the sprite is drawn.
+   *
+   * @return The height in user space.
+   */
+  public int getHeight() {
+    return (int) Math.round( mBounds.height / mPixelScale );
+  }
+
+  int getPixelWidth() {
+    return mBounds.width;
+  }
+
+  int getPixelHeight() {
+    return mBounds.height;
+  }
+
+  /**
+   * Returns the ratio of atlas pixels to user space pixels.
+   *
+   * @return The display scale that the sprite was rasterized for.
+   */
+  public double getPixelScale() {
+    return mPixelScale;
+  }
+
+  /**
+   * Returns the dimensions of the vector graphic and its rasterized image.
+   *
+   * @return The source dimensions paired with the scaled dimensions, in
+   * atlas pixels.
+   */
+  public DimensionTuple getScale() {
+    return mScale;
+  }
+}
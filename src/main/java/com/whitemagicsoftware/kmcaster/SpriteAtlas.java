@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.ui.DimensionTuple;
+import com.whitemagicsoftware.kmcaster.util.Pair;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import static java.util.Comparator.comparingInt;
+
+/**
+ * Responsible for packing many images into a single image (an atlas) so
+ * that they are allocated, accelerated, and released as a unit. Images are
+ * laid out in rows (shelves), tallest first, separated by a transparent gap
+ * so that filtering at the edge of one sprite never samples its neighbour.
+ *
+ * @param <K> The type of key that identifies a sprite.
+ */
+public final class SpriteAtlas<K> {
+  /**
+   * Transparent pixels between sprites.
+   */
+  private static final int GAP = 1;
+
+  private final BufferedImage mImage;
+  private final Map<K, Sprite> mSprites = new HashMap<>();
+
+  /**
+   * Copies the given images into a new atlas. The images are not retained.
+   *
+   * @param images     The images to pack, paired with their scales.
+   * @param pixelScale The ratio of image pixels to user space pixels, which
+   *                   is greater than one for high-resolution displays.
+   * @param factory    Creates a blank image, given its width and height, in
+   *                   the pixel format for the atlas.
+   */
+  public SpriteAtlas(
+    final Map<K, Pair<Image, DimensionTuple>> images,
+    final double pixelScale,
+    final BiFunction<Integer, Integer, BufferedImage> factory ) {
+    assert images != null;
+    assert !images.isEmpty();
+
+    final var entries = new ArrayList<>( images.entrySet() );
+    entries.sort(
+      comparingInt( ( Map.Entry<K, Pair<Image, DimensionTuple>> e ) ->
+                      -e.getValue().getKey().getHeight( null ) ) );
+
+    // Aim for a roughly square atlas, but no narrower than the widest image.
+    long area = 0;
+    int widest = 0;
+
+    for( final var entry : entries ) {
+      final var image = entry.getValue().getKey();
+      final var w = image.getWidth( null ) + GAP;
+
+      area += (long) w * (image.getHeight( null ) + GAP);
+      widest = Math.max( widest, w );
+    }
+
+    final var shelfWidth =
+      Math.max( widest, (int) Math.ceil( Math.sqrt( area ) ) );
+    final var bounds = new HashMap<K, Rectangle>();
+    int x = 0, y = 0, shelfHeight = 0, atlasWidth = 0;
+
+    for( final var entry : entries ) {
+      final var image = entry.getValue().getKey();
+      final var w = image.getWidth( null );
+      final var h = image.getHeight( null );
+
+      if( x + w > shelfWidth ) {
+        x = 0;
+        y += shelfHeight + GAP;
+        shelfHeight = 0;
+      }
+
+      bounds.put( entry.getKey(), new Rectangle( x, y, w, h ) );
+      atlasWidth = Math.max( atlasWidth, x + w );
+      shelfHeight = Math.max( shelfHeight, h );
+      x += w + GAP;
+    }
+
+    mImage = factory.apply( atlasWidth, y + shelfHeight );
+
+    final var g = mImage.createGraphics();
+    g.setComposite( AlphaComposite.Src );
+
+    for( final var entry : entries ) {
+      final var key = entry.getKey();
+      final var b = bounds.get( key );
+      final var scale = entry.getValue().getValue();
+
+      g.drawImage( entry.getValue().getKey(), b.x, b.y, null );
+      mSprites.put( key, new Sprite( mImage, b, scale, pixelScale ) );
+    }
+
+    g.dispose();
+  }
+
+  /**
+   * Returns the sprite for the given key.
+   *
+   * @param key Identifies an image that was packed into this atlas.
+   * @return The sprite, or {@code null} if the key was not packed.
+   */
+  public Sprite get( final K key ) {
+    return mSprites.get( key );
+  }
+
+  /**
+   * Returns the number of bytes used by the atlas pixels.
+   *
+   * @return The atlas size, in bytes.
+   */
+  public long getByteCount() {
+    final var raster = mImage.getRaster();
+    final var buffer = raster.getDataBuffer();
+
+    return (long) buffer.getSize() * buffer.getNumBanks() *
+      DataBuffer.getDataTypeSize( buffer.getDataType() ) / Byte.SIZE;
+  }
+
+  public int getWidth() {
+    return mImage.getWidth();
+  }
+
+  public int getHeight() {
+    return mImage.getHeight();
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Responsible for running independent startup tasks concurrently and for
+ * recording when each task, and the first paint, finished. Times are
+ * measured from when this object was created, which should be the first
+ * thing that happens in the main entry point.
+ */
+final class Startup {
+  /**
+   * Runs each startup task on its own daemon thread; there are few tasks
+   * and several block (e.g., on the native hook), so a pool would not help.
+   */
+  private static final Executor EXECUTOR = task -> {
+    final var thread = new Thread( task, "startup" );
+    thread.setDaemon( true );
+    thread.start();
+  };
+
+  /**
+   * A task that may throw a checked exception and has no result.
+   */
+  @FunctionalInterface
+  interface Task {
+    void run() throws Exception;
+  }
+
+  private final long mStart = System.nanoTime();
+
+  /**
+   * Milliseconds from start until each named milestone, in order reached.
+   */
+  private final Map<String, Long> mMilestones = new LinkedHashMap<>();
+
+  /**
+   * Runs a task in the background, recording when it completes.
+   *
+   * @param name Identifies the task in the report.
+   * @param task The work to perform.
+   * @param <T>  The type of result.
+   * @return A future that completes with the task's result, or
+   * exceptionally if the task failed.
+   */
+  <T> CompletableFuture<T> supply( final String name, final Callable<T> task ) {
+    return CompletableFuture.supplyAsync( () -> {
+      try {
+        final var result = task.call();
+        mark( name );
+        return result;
+      } catch( final Exception ex ) {
+        throw new CompletionException( ex );
+      }
+    }, EXECUTOR );
+  }
+
+  /**
+   * Runs a task in the background, recording when it completes.
+   *
+   * @param name Identifies the task in the report.
+   * @param task The work to perform.
+   * @return A future that completes when the task has finished.
+   */
+  CompletableFuture<Void> run( final String name, final Task task ) {
+    return supply( name, () -> {
+      task.run();
+      return null;
+    } );
+  }
+
+  /**
+   * Records that a milestone has been reached.
+   *
+   * @param name Identifies the milestone in the report.
+   */
+  synchronized void mark( final String name ) {
+    mMilestones.put( name, NANOSECONDS.toMillis( System.nanoTime() - mStart ) );
+  }
+
+  /**
+   * Returns the time between the process starting and this object being
+   * created, which includes loading the virtual machine.
+   *
+   * @return The launch overhead, in milliseconds, or -1 if unknown.
+   */
+  private long getLaunchMillis() {
+    final var started = ProcessHandle.current().info().startInstant();
+    final var elapsed = NANOSECONDS.toMillis( System.nanoTime() - mStart );
+
+    return started
+      .map( i -> System.currentTimeMillis() - i.toEpochMilli() - elapsed )
+      .orElse( -1L );
+  }
+
+  @Override
+  public synchronized String toString() {
+    final var sb = new StringBuilder( "Startup (ms):" );
+
+    sb.append( " launch=" ).append( getLaunchMillis() );
+    mMilestones.forEach(
+      ( name, ms ) -> sb.append( ", " ).append( name ).append( '=' ).append( ms )
+    );
+
+    return sb.toString();
+  }
+}
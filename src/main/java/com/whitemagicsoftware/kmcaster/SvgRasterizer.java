@@ -32,38 +32,33 @@ import com.kitfox.svg.SVGException;
 import com.kitfox.svg.SVGUniverse;
 import com.whitemagicsoftware.kmcaster.ui.DimensionTuple;
 import com.whitemagicsoftware.kmcaster.ui.ScalableDimension;
+import com.whitemagicsoftware.kmcaster.util.Pair;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.net.URL;
-import java.util.Map;
 
-import static java.awt.RenderingHints.*;
+import static com.whitemagicsoftware.kmcaster.ui.Constants.RENDERING_HINTS;
 import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
-import static java.util.Map.entry;
 
 /**
  * Responsible for converting SVG images into rasterized PNG images.
  */
 public final class SvgRasterizer {
-  public final static Map<Object, Object> RENDERING_HINTS = Map.ofEntries(
-    entry( KEY_ANTIALIASING, VALUE_ANTIALIAS_ON ),
-    entry( KEY_ALPHA_INTERPOLATION, VALUE_ALPHA_INTERPOLATION_QUALITY ),
-    entry( KEY_COLOR_RENDERING, VALUE_COLOR_RENDER_QUALITY ),
-    entry( KEY_DITHERING, VALUE_DITHER_DISABLE ),
-    entry( KEY_FRACTIONALMETRICS, VALUE_FRACTIONALMETRICS_ON ),
-    entry( KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR ),
-    entry( KEY_RENDERING, VALUE_RENDER_QUALITY ),
-    entry( KEY_STROKE_CONTROL, VALUE_STROKE_PURE ),
-    entry( KEY_TEXT_ANTIALIASING, VALUE_TEXT_ANTIALIAS_ON )
-  );
-
-  private final static SVGUniverse sRenderer = new SVGUniverse();
+  /**
+   * An {@link SVGUniverse} is not thread-safe, so each thread that loads
+   * diagrams has its own; diagrams must be rasterized by the thread that
+   * loaded them. This allows independent images to be rasterized in
+   * parallel.
+   */
+  private final static ThreadLocal<SVGUniverse> sRenderer =
+    ThreadLocal.withInitial( SVGUniverse::new );
 
   /**
    * Loads the resource specified by the given path into an instance of
    * {@link SVGDiagram} that can be rasterized into a bitmap format. The
-   * {@link SVGUniverse} class will
+   * diagram is owned by the calling thread's {@link SVGUniverse} until
+   * passed to {@link #releaseDiagram(SVGDiagram)}.
    *
    * @param path The full path (starting at the root), relative to the
    *             application or JAR file's resources directory.
@@ -72,8 +67,9 @@ public final class SvgRasterizer {
    */
   public SVGDiagram loadDiagram( final String path ) {
     final var url = getResourceUrl( path );
-    final var uri = sRenderer.loadSVG( url );
-    final var diagram = sRenderer.getDiagram( uri );
+    final var renderer = sRenderer.get();
+    final var uri = renderer.loadSVG( url );
+    final var diagram = renderer.getDiagram( uri );
     return applySettings( diagram );
   }
 
@@ -139,6 +135,42 @@ public final class SvgRasterizer {
     return rasterize( diagram, calculateScale( diagram, dstDim ) );
   }
 
+  /**
+   * Loads and rasterizes a vector graphic to fit the given dimensions,
+   * maintaining its aspect ratio. The diagram is released afterwards, so
+   * that long-lived worker threads do not retain every diagram they have
+   * rasterized.
+   *
+   * @param path   The full path to the SVG resource.
+   * @param dstDim The dimensions to fit.
+   * @return The rasterized image paired with its source and scaled
+   * dimensions.
+   * @throws SVGException Could not open, read, parse, or render SVG data.
+   */
+  public Pair<BufferedImage, DimensionTuple> rasterize(
+    final String path, final Dimension dstDim ) throws SVGException {
+    final var diagram = loadDiagram( path );
+
+    try {
+      final var scale = calculateScale( diagram, dstDim );
+
+      return new Pair<>( rasterize( diagram, scale ), scale );
+    } finally {
+      releaseDiagram( diagram );
+    }
+  }
+
+  /**
+   * Removes a diagram from the calling thread's {@link SVGUniverse}, which
+   * otherwise keeps every loaded diagram for the life of the thread. This
+   * must be called by the thread that loaded the diagram.
+   *
+   * @param diagram The diagram returned from {@link #loadDiagram(String)}.
+   */
+  public void releaseDiagram( final SVGDiagram diagram ) {
+    sRenderer.get().removeDocument( diagram.getXMLBase() );
+  }
+
   /**
    * Gets an instance of {@link URL} that references a file in the
    * application's resources.
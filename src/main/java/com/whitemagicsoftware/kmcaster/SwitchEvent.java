@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster;
+
+import com.whitemagicsoftware.kmcaster.util.InternTable;
+
+/**
+ * Responsible for encoding hardware switch state changes as primitive
+ * {@code long} values. An event is comprised of the {@link HardwareSwitch}
+ * ordinal, the {@link HardwareState}, and an interned label identifier, which
+ * lets events be created, queued, and read without allocating memory.
+ * <p>
+ * Bits 0 to 7 hold the switch ordinal, bit 8 is set when the switch is
+ * pressed, and bits 32 to 63 hold the label identifier.
+ * </p>
+ */
+public final class SwitchEvent {
+  private static final long MASK_SWITCH = 0xFFL;
+  private static final long MASK_PRESSED = 0x100L;
+  private static final int SHIFT_LABEL = 32;
+
+  /**
+   * Label text for all events, shared by every producer and consumer.
+   */
+  private static final InternTable LABELS = new InternTable();
+
+  /**
+   * Identifier for events that have no label text (e.g., modifier keys).
+   */
+  public static final int NO_LABEL = LABELS.intern( "" );
+
+  /**
+   * Encodes a hardware switch state change.
+   *
+   * @param hwSwitch The switch that changed state.
+   * @param pressed  {@code true} means pressed, {@code false} means released.
+   * @param labelId  The label text identifier, from {@link #intern(String)}.
+   * @return The encoded event.
+   */
+  public static long encode(
+    final HardwareSwitch hwSwitch, final boolean pressed, final int labelId ) {
+    assert hwSwitch != null;
+    assert labelId >= 0;
+
+    return ((long) labelId << SHIFT_LABEL) |
+      (pressed ? MASK_PRESSED : 0) |
+      hwSwitch.ordinal();
+  }
+
+  /**
+   * Returns the switch encoded in the given event.
+   *
+   * @param event A value returned from {@link #encode}.
+   * @return The {@link HardwareSwitch} that changed state.
+   */
+  public static HardwareSwitch getSwitch( final long event ) {
+    return HardwareSwitch.valueFrom( (int) (event & MASK_SWITCH) );
+  }
+
+  /**
+   * Returns the switch state encoded in the given event.
+   *
+   * @param event A value returned from {@link #encode}.
+   * @return The new state of the switch.
+   */
+  public static HardwareState getState( final long event ) {
+    return HardwareState.valueFrom( isPressed( event ) );
+  }
+
+  /**
+   * Answers whether the given event represents a switch being pressed.
+   *
+   * @param event A value returned from {@link #encode}.
+   * @return {@code true} if pressed, {@code false} if released.
+   */
+  public static boolean isPressed( final long event ) {
+    return (event & MASK_PRESSED) != 0;
+  }
+
+  /**
+   * Returns the label identifier encoded in the given event.
+   *
+   * @param event A value returned from {@link #encode}.
+   * @return The interned label identifier.
+   */
+  public static int getLabelId( final long event ) {
+    return (int) (event >>> SHIFT_LABEL);
+  }
+
+  /**
+   * Returns the label text for the given event.
+   *
+   * @param event A value returned from {@link #encode}.
+   * @return The label text, or the empty string if there is no label.
+   */
+  public static String getLabel( final long event ) {
+    return LABELS.get( getLabelId( event ) );
+  }
+
+  /**
+   * Returns the identifier for the given label text, suitable for passing
+   * to {@link #encode}.
+   *
+   * @param label The text to display for a switch.
+   * @return The interned label identifier.
+   */
+  public static int intern( final String label ) {
+    return LABELS.intern( label );
+  }
+
+  /**
+   * Private, empty constructor.
+   */
+  private SwitchEvent() {
+  }
+}
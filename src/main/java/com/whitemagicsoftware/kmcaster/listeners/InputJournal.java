@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.listeners;
+
+/**
+ * Responsible for the binary layout of recorded input events, shared by
+ * {@link JournalRecorder} and {@link JournalReplayer}. A journal starts with
+ * {@link #MAGIC} and {@link #VERSION}, followed by one record per event:
+ * <ol>
+ *   <li>record type, one byte;</li>
+ *   <li>milliseconds since the previous event, as a varint;</li>
+ *   <li>modifier mask, as a varint;</li>
+ *   <li>key events: raw code, key code, key char, and key location;</li>
+ *   <li>button events: button, x, y, and click count;</li>
+ *   <li>wheel events: x, y, click count, scroll type, scroll amount, wheel
+ *   rotation, and wheel direction.</li>
+ * </ol>
+ * <p>
+ * Unsigned values are written as little-endian base-128 varints, so that
+ * most fields take one byte; signed values (coordinates and rotation) are
+ * zig-zag encoded first.
+ * </p>
+ */
+final class InputJournal {
+  static final byte[] MAGIC = {'K', 'M', 'C', 'J'};
+  static final int VERSION = 1;
+
+  static final int KEY_PRESSED = 0;
+  static final int KEY_RELEASED = 1;
+  static final int KEY_TYPED = 2;
+  static final int MOUSE_PRESSED = 3;
+  static final int MOUSE_RELEASED = 4;
+  static final int MOUSE_WHEEL = 5;
+
+  /**
+   * Largest number of bytes in any single record: a type byte and, at most,
+   * nine fields of five bytes each.
+   */
+  static final int MAX_RECORD_BYTES = 1 + 9 * 5;
+
+  /**
+   * Writes an unsigned integer using as few bytes as possible.
+   *
+   * @param buffer The destination.
+   * @param offset Index of the first byte to write.
+   * @param value  The value to encode, treated as unsigned.
+   * @return The index after the last byte written.
+   */
+  static int writeVarint( final byte[] buffer, int offset, int value ) {
+    while( (value & ~0x7F) != 0 ) {
+      buffer[ offset++ ] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    buffer[ offset++ ] = (byte) value;
+    return offset;
+  }
+
+  /**
+   * Maps signed integers to unsigned integers so that values near zero, of
+   * either sign, encode into few bytes.
+   *
+   * @param value The signed value.
+   * @return The zig-zag encoded value.
+   */
+  static int zigzag( final int value ) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  /**
+   * Reverses {@link #zigzag(int)}.
+   *
+   * @param value The zig-zag encoded value.
+   * @return The signed value.
+   */
+  static int unzigzag( final int value ) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private InputJournal() {
+  }
+}
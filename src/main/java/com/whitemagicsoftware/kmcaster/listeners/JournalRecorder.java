@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.listeners;
+
+import com.github.kwhat.jnativehook.NativeInputEvent;
+import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
+import com.github.kwhat.jnativehook.keyboard.NativeKeyListener;
+import com.github.kwhat.jnativehook.mouse.NativeMouseEvent;
+import com.github.kwhat.jnativehook.mouse.NativeMouseListener;
+import com.github.kwhat.jnativehook.mouse.NativeMouseWheelEvent;
+import com.github.kwhat.jnativehook.mouse.NativeMouseWheelListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.whitemagicsoftware.kmcaster.listeners.InputJournal.*;
+
+/**
+ * Responsible for writing native keyboard and mouse events to a compact
+ * binary journal that {@link JournalReplayer} can play back. Mouse motion
+ * is not recorded because it does not change what is displayed.
+ * <p>
+ * Events are encoded into a reusable buffer, so recording does not allocate
+ * memory per event; the buffer is written out when it fills and on close.
+ * </p>
+ */
+public final class JournalRecorder
+  implements NativeKeyListener, NativeMouseListener, NativeMouseWheelListener,
+  Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final OutputStream mOut;
+  private final byte[] mBuffer = new byte[ BUFFER_SIZE ];
+  private int mOffset;
+
+  /**
+   * Time of the previously recorded event, in milliseconds.
+   */
+  private long mWhen;
+
+  private boolean mClosed;
+
+  /**
+   * Creates a journal at the given path, replacing any existing file.
+   *
+   * @param path The file to write.
+   * @throws IOException Could not create the file.
+   */
+  public JournalRecorder( final Path path ) throws IOException {
+    mOut = Files.newOutputStream( path );
+    mOut.write( MAGIC );
+    mOut.write( VERSION );
+  }
+
+  @Override
+  public void nativeKeyPressed( final NativeKeyEvent e ) {
+    writeKey( KEY_PRESSED, e );
+  }
+
+  @Override
+  public void nativeKeyReleased( final NativeKeyEvent e ) {
+    writeKey( KEY_RELEASED, e );
+  }
+
+  @Override
+  public void nativeKeyTyped( final NativeKeyEvent e ) {
+    writeKey( KEY_TYPED, e );
+  }
+
+  @Override
+  public void nativeMousePressed( final NativeMouseEvent e ) {
+    writeButton( MOUSE_PRESSED, e );
+  }
+
+  @Override
+  public void nativeMouseReleased( final NativeMouseEvent e ) {
+    writeButton( MOUSE_RELEASED, e );
+  }
+
+  @Override
+  public void nativeMouseWheelMoved( final NativeMouseWheelEvent e ) {
+    writeWheel( e );
+  }
+
+  /**
+   * Writes any buffered events and closes the journal. Events received
+   * afterwards are ignored.
+   *
+   * @throws IOException Could not write to the file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if( !mClosed ) {
+      mClosed = true;
+
+      try( mOut ) {
+        flush();
+      }
+    }
+  }
+
+  private synchronized void writeKey( final int type, final NativeKeyEvent e ) {
+    if( mClosed ) {
+      return;
+    }
+
+    var i = writeHeader( type, e );
+
+    i = writeVarint( mBuffer, i, e.getRawCode() );
+    i = writeVarint( mBuffer, i, e.getKeyCode() );
+    i = writeVarint( mBuffer, i, e.getKeyChar() );
+    mOffset = writeVarint( mBuffer, i, e.getKeyLocation() );
+  }
+
+  private synchronized void writeButton(
+    final int type, final NativeMouseEvent e ) {
+    if( mClosed ) {
+      return;
+    }
+
+    var i = writeHeader( type, e );
+
+    i = writeVarint( mBuffer, i, e.getButton() );
+    i = writeVarint( mBuffer, i, zigzag( e.getX() ) );
+    i = writeVarint( mBuffer, i, zigzag( e.getY() ) );
+    mOffset = writeVarint( mBuffer, i, e.getClickCount() );
+  }
+
+  private synchronized void writeWheel( final NativeMouseWheelEvent e ) {
+    if( mClosed ) {
+      return;
+    }
+
+    var i = writeHeader( MOUSE_WHEEL, e );
+
+    i = writeVarint( mBuffer, i, zigzag( e.getX() ) );
+    i = writeVarint( mBuffer, i, zigzag( e.getY() ) );
+    i = writeVarint( mBuffer, i, e.getClickCount() );
+    i = writeVarint( mBuffer, i, e.getScrollType() );
+    i = writeVarint( mBuffer, i, e.getScrollAmount() );
+    i = writeVarint( mBuffer, i, zigzag( e.getWheelRotation() ) );
+    mOffset = writeVarint( mBuffer, i, e.getWheelDirection() );
+  }
+
+  /**
+   * Makes room for a record, then writes the fields common to all records.
+   *
+   * @param type The kind of record being written.
+   * @param e    The event being recorded.
+   * @return The index at which to write the event-specific fields.
+   */
+  private int writeHeader( final int type, final NativeInputEvent e ) {
+    if( mOffset > BUFFER_SIZE - MAX_RECORD_BYTES ) {
+      flush();
+    }
+
+    // The native timestamp may be unavailable, fall back to the clock.
+    final var when = e.getWhen() > 0 ? e.getWhen() : System.currentTimeMillis();
+    final var delta = mWhen == 0 ? 0 : Math.max( 0, when - mWhen );
+    mWhen = when;
+
+    mBuffer[ mOffset ] = (byte) type;
+
+    final var i = writeVarint(
+      mBuffer, mOffset + 1, (int) Math.min( delta, Integer.MAX_VALUE ) );
+
+    return writeVarint( mBuffer, i, e.getModifiers() );
+  }
+
+  private void flush() {
+    try {
+      mOut.write( mBuffer, 0, mOffset );
+      mOffset = 0;
+    } catch( final IOException ex ) {
+      throw new UncheckedIOException( ex );
+    }
+  }
+}
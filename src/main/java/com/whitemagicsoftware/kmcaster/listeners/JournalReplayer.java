@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.listeners;
+
+import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
+import com.github.kwhat.jnativehook.keyboard.NativeKeyListener;
+import com.github.kwhat.jnativehook.mouse.NativeMouseEvent;
+import com.github.kwhat.jnativehook.mouse.NativeMouseListener;
+import com.github.kwhat.jnativehook.mouse.NativeMouseWheelEvent;
+import com.github.kwhat.jnativehook.mouse.NativeMouseWheelListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.github.kwhat.jnativehook.keyboard.NativeKeyEvent.*;
+import static com.github.kwhat.jnativehook.mouse.NativeMouseEvent.*;
+import static com.whitemagicsoftware.kmcaster.listeners.InputJournal.*;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Responsible for playing back a journal written by {@link JournalRecorder}
+ * through the same listeners that the native hook would call. This allows
+ * typing sessions to be reproduced, without the native hook or a person at
+ * the keyboard, to measure sustained throughput.
+ * <p>
+ * Events are delivered on the thread that calls {@link #run()}, which takes
+ * the place of the native hook's dispatch thread.
+ * </p>
+ */
+public final class JournalReplayer implements Runnable {
+  private final byte[] mJournal;
+  private final double mSpeed;
+  private final NativeKeyListener mKeyListener;
+  private final NativeMouseListener mMouseListener;
+  private final NativeMouseWheelListener mWheelListener;
+
+  /**
+   * Index of the next byte to decode from {@link #mJournal}.
+   */
+  private int mOffset;
+
+  private long mEvents;
+  private long mElapsedNanos;
+
+  /**
+   * Reads a journal for playback.
+   *
+   * @param path  The journal to play back.
+   * @param speed Multiple of the recorded speed (e.g., 2 is twice as fast);
+   *              zero (or less) plays events as fast as possible.
+   * @param keys  Receives keyboard events.
+   * @param mouse Receives mouse button and wheel events.
+   * @param <M>   The type of mouse listener.
+   * @throws IOException Could not read the file, or it is not a journal.
+   */
+  public <M extends NativeMouseListener & NativeMouseWheelListener>
+  JournalReplayer(
+    final Path path,
+    final double speed,
+    final NativeKeyListener keys,
+    final M mouse ) throws IOException {
+    assert keys != null;
+    assert mouse != null;
+
+    mJournal = Files.readAllBytes( path );
+    mSpeed = speed;
+    mKeyListener = keys;
+    mMouseListener = mouse;
+    mWheelListener = mouse;
+
+    if( mJournal.length <= MAGIC.length ||
+      !Arrays.equals( mJournal, 0, MAGIC.length, MAGIC, 0, MAGIC.length ) ||
+      mJournal[ MAGIC.length ] != VERSION ) {
+      throw new IOException( "Not a version " + VERSION + " journal: " + path );
+    }
+  }
+
+  /**
+   * Plays back every event in the journal, pausing between events to honour
+   * the recorded timing (adjusted for speed). This may be called repeatedly
+   * to play the journal more than once.
+   */
+  @Override
+  public void run() {
+    final var start = System.nanoTime();
+    final var fastest = !(mSpeed > 0);
+    var due = 0.0;
+
+    mOffset = MAGIC.length + 1;
+
+    while( mOffset < mJournal.length ) {
+      final var type = mJournal[ mOffset++ ];
+      final var delta = readVarint();
+
+      if( !fastest ) {
+        due += MILLISECONDS.toNanos( delta ) / mSpeed;
+
+        final var wait = start + (long) due - System.nanoTime();
+
+        if( wait > 0 ) {
+          LockSupport.parkNanos( wait );
+        }
+      }
+
+      dispatch( type, readVarint() );
+      mEvents++;
+    }
+
+    mElapsedNanos += System.nanoTime() - start;
+  }
+
+  /**
+   * Returns the number of events played back by all calls to {@link #run()}.
+   *
+   * @return The total number of events delivered to the listeners.
+   */
+  public long getEvents() {
+    return mEvents;
+  }
+
+  /**
+   * Returns the time spent playing back events.
+   *
+   * @return The total duration of all calls to {@link #run()}.
+   */
+  public long getElapsedNanos() {
+    return mElapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    final var millis = mElapsedNanos / 1_000_000.0;
+    final var rate = millis > 0 ? mEvents / (millis / 1000) : 0;
+
+    return String.format(
+      "Replayed %d events in %.1f ms (%.0f events/s)", mEvents, millis, rate );
+  }
+
+  private void dispatch( final int type, final int modifiers ) {
+    switch( type ) {
+      case KEY_PRESSED -> mKeyListener.nativeKeyPressed(
+        readKey( NATIVE_KEY_PRESSED, modifiers ) );
+      case KEY_RELEASED -> mKeyListener.nativeKeyReleased(
+        readKey( NATIVE_KEY_RELEASED, modifiers ) );
+      case KEY_TYPED -> mKeyListener.nativeKeyTyped(
+        readKey( NATIVE_KEY_TYPED, modifiers ) );
+      case MOUSE_PRESSED -> mMouseListener.nativeMousePressed(
+        readButton( NATIVE_MOUSE_PRESSED, modifiers ) );
+      case MOUSE_RELEASED -> mMouseListener.nativeMouseReleased(
+        readButton( NATIVE_MOUSE_RELEASED, modifiers ) );
+      case MOUSE_WHEEL -> mWheelListener.nativeMouseWheelMoved(
+        readWheel( modifiers ) );
+      default -> throw new IllegalStateException(
+        "Unknown journal record type " + type + " at " + (mOffset - 1) );
+    }
+  }
+
+  private NativeKeyEvent readKey( final int id, final int modifiers ) {
+    final var rawCode = readVarint();
+    final var keyCode = readVarint();
+    final var keyChar = (char) readVarint();
+    final var location = readVarint();
+
+    return new NativeKeyEvent(
+      id, modifiers, rawCode, keyCode, keyChar, location );
+  }
+
+  private NativeMouseEvent readButton( final int id, final int modifiers ) {
+    final var button = readVarint();
+    final var x = unzigzag( readVarint() );
+    final var y = unzigzag( readVarint() );
+    final var clicks = readVarint();
+
+    return new NativeMouseEvent( id, modifiers, x, y, clicks, button );
+  }
+
+  private NativeMouseWheelEvent readWheel( final int modifiers ) {
+    final var x = unzigzag( readVarint() );
+    final var y = unzigzag( readVarint() );
+    final var clicks = readVarint();
+    final var scrollType = readVarint();
+    final var scrollAmount = readVarint();
+    final var rotation = unzigzag( readVarint() );
+    final var direction = readVarint();
+
+    return new NativeMouseWheelEvent(
+      NATIVE_MOUSE_WHEEL, modifiers, x, y, clicks,
+      scrollType, scrollAmount, rotation, direction );
+  }
+
+  private int readVarint() {
+    var value = 0;
+    var shift = 0;
+    byte b;
+
+    do {
+      b = mJournal[ mOffset++ ];
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    }
+    while( b < 0 );
+
+    return value;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.listeners;
+
+import com.whitemagicsoftware.kmcaster.SwitchEvent;
+import com.whitemagicsoftware.kmcaster.listeners.KeyboardListener.HandedSwitch;
+
+/**
+ * Responsible for describing what to display when a key is pressed. The
+ * label text is interned when the descriptor is created so that dispatching
+ * a key event needs neither string creation nor map lookups.
+ */
+final class KeyLabel {
+  private final String mText;
+  private final int mLabelId;
+  private final HandedSwitch mModifier;
+
+  /**
+   * Creates a descriptor for a regular (non-modifier) key.
+   *
+   * @param text The text to display for the key.
+   */
+  KeyLabel( final String text ) {
+    this( text, null );
+  }
+
+  /**
+   * Creates a descriptor for a key.
+   *
+   * @param text     The text to display for the key, or {@code null} if the
+   *                 key has no text of its own.
+   * @param modifier The modifier that the key controls, or {@code null} if
+   *                 the key is not a modifier.
+   */
+  KeyLabel( final String text, final HandedSwitch modifier ) {
+    mText = text;
+    mLabelId = text == null ? SwitchEvent.NO_LABEL : SwitchEvent.intern( text );
+    mModifier = modifier;
+  }
+
+  /**
+   * Returns a copy of this descriptor that controls the given modifier.
+   *
+   * @param modifier The modifier that the key controls.
+   * @return A new descriptor having the same text as this descriptor.
+   */
+  KeyLabel withModifier( final HandedSwitch modifier ) {
+    return new KeyLabel( mText, modifier );
+  }
+
+  /**
+   * Answers whether this key has text to display.
+   *
+   * @return {@code false} if the key only acts as a modifier.
+   */
+  boolean hasText() {
+    return mText != null;
+  }
+
+  /**
+   * Answers whether this key is a modifier key.
+   *
+   * @return {@code true} when the key controls a modifier.
+   */
+  boolean isModifier() {
+    return mModifier != null;
+  }
+
+  String getText() {
+    return mText;
+  }
+
+  int getLabelId() {
+    return mLabelId;
+  }
+
+  HandedSwitch getModifier() {
+    return mModifier;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" +
+      "mText='" + mText + '\'' +
+      ", mModifier=" + mModifier +
+      '}';
+  }
+}
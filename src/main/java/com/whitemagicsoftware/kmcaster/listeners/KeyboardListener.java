@@ -33,10 +33,11 @@ import com.whitemagicsoftware.kmcaster.HardwareSwitch;
 import com.whitemagicsoftware.kmcaster.Settings;
 
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
+import static com.github.kwhat.jnativehook.NativeInputEvent.*;
 import static com.whitemagicsoftware.kmcaster.HardwareSwitch.*;
 import static com.whitemagicsoftware.kmcaster.listeners.KeyboardListener.HandedSwitch.*;
 import static java.lang.Boolean.FALSE;
@@ -46,10 +47,10 @@ import static org.apache.commons.lang3.SystemUtils.IS_OS_LINUX;
 import static org.apache.commons.lang3.SystemUtils.IS_OS_WINDOWS;
 
 /**
- * Responsible for sending property change events for keyboard state changes.
+ * Responsible for sending switch events for keyboard state changes.
  */
 public final class KeyboardListener
-  extends PropertyDispatcher<HardwareSwitch>
+  extends PropertyDispatcher
   implements NativeKeyListener {
   private final static String KEY_SPACE = "Space";
   private final static String KEY_BACKSPACE = "Back ⌫";
@@ -218,28 +219,43 @@ public final class KeyboardListener
   /**
    * Maps left and right switches to their on-screen representation. This
    * allows the left and right keys to control whether the switch is active,
-   * independently.
+   * independently. Each handed switch is assigned the native hook library's
+   * bit for that key, so the union of both bits equals the mask of the
+   * corresponding {@link HardwareSwitch}.
    */
   enum HandedSwitch {
-    KEY_SHIFT_LEFT( KEY_SHIFT ),
-    KEY_SHIFT_RIGHT( KEY_SHIFT ),
-    KEY_SUPER_LEFT( KEY_SUPER ),
-    KEY_SUPER_RIGHT( KEY_SUPER ),
-    KEY_CTRL_LEFT( KEY_CTRL ),
-    KEY_CTRL_RIGHT( KEY_CTRL ),
-    KEY_ALT_LEFT( KEY_ALT ),
-    KEY_ALT_RIGHT( KEY_ALT );
+    KEY_SHIFT_LEFT( KEY_SHIFT, SHIFT_L_MASK ),
+    KEY_SHIFT_RIGHT( KEY_SHIFT, SHIFT_R_MASK ),
+    KEY_SUPER_LEFT( KEY_SUPER, META_L_MASK ),
+    KEY_SUPER_RIGHT( KEY_SUPER, META_R_MASK ),
+    KEY_CTRL_LEFT( KEY_CTRL, CTRL_L_MASK ),
+    KEY_CTRL_RIGHT( KEY_CTRL, CTRL_R_MASK ),
+    KEY_ALT_LEFT( KEY_ALT, ALT_L_MASK ),
+    KEY_ALT_RIGHT( KEY_ALT, ALT_R_MASK );
 
     final HardwareSwitch mHwSwitch;
+    final int mMask;
 
-    HandedSwitch( final HardwareSwitch hwSwitch ) {
+    HandedSwitch( final HardwareSwitch hwSwitch, final int mask ) {
       assert hwSwitch != null;
+      assert (hwSwitch.getMask() & mask) == mask;
+
       mHwSwitch = hwSwitch;
+      mMask = mask;
     }
 
     public HardwareSwitch getHardwareSwitch() {
       return mHwSwitch;
     }
+
+    /**
+     * Returns the bit that represents this key in a modifier bitmask.
+     *
+     * @return A single bit, unique to this handed switch.
+     */
+    public int getMask() {
+      return mMask;
+    }
   }
 
   private static Map<Integer, HandedSwitch> initModifierRawCodes(boolean showSuperKeyAsModifier) {
@@ -297,21 +313,41 @@ public final class KeyboardListener
     }
   }
   /**
-   * Most recently pressed non-modifier key value, empty signifies release.
+   * Modifiers that can be displayed, depending on user settings.
+   */
+  private final HardwareSwitch[] mModifierSwitches;
+
+  /**
+   * Stores the last dispatched state of each displayed modifier key. A
+   * modifier is pressed when all bits of its {@link HardwareSwitch#getMask()}
+   * are set.
    */
-  private String mRegularHeld = "";
+  private int mModifiers;
 
   /**
-   * Stores the state of modifier keys. The contents of the map reflect the
-   * state of each switch, so the reference can be final but not its contents.
-   * An integer is used because keyboards usually have two separate keys for
-   * each modifier, both can be pressed and released independently.
+   * Stores the physical state of each modifier key, one bit per
+   * {@link HandedSwitch}. Keyboards usually have two separate keys for each
+   * modifier, both can be pressed and released independently.
    */
-  private final Map<HardwareSwitch, Boolean> mModifiers = new HashMap<>();
+  private volatile int mHandedModifiers;
 
-  private final Set<HandedSwitch> mHandedModifiers = new HashSet<>();
+  /**
+   * Maps raw key codes to label descriptors, compiled from {@link #RAW_CODES}
+   * and the operating system's modifier key codes.
+   */
+  private final Keymap<KeyLabel> mRawCodes;
 
-  private final Map<Integer, HandedSwitch> modifierRawCodes;
+  /**
+   * Maps typed characters to label descriptors, compiled from
+   * {@link #CHAR_CODES} and extended as new characters are typed.
+   */
+  private final Keymap<KeyLabel> mCharCodes = new Keymap<>();
+
+  /**
+   * Maps action key codes to label descriptors, populated as action keys
+   * are pressed.
+   */
+  private final Keymap<KeyLabel> mKeyCodes = new Keymap<>();
 
   /**
    * Creates a keyboard listener that publishes events when keys are either
@@ -320,10 +356,54 @@ public final class KeyboardListener
    * a way to query what keys are currently pressed.
    */
   public KeyboardListener(Settings userSettings) {
-    this.modifierRawCodes = initModifierRawCodes(userSettings.isSuperEnabled());
-    for( final var key : modifierSwitches(userSettings.isSuperEnabled()) ) {
-      mModifiers.put( key, FALSE );
-    }
+    mRawCodes = compileRawCodes(
+      initModifierRawCodes( userSettings.isSuperEnabled() ) );
+    CHAR_CODES.forEach(
+      ( keyChar, text ) -> mCharCodes.put( keyChar, new KeyLabel( text ) ) );
+
+    mModifierSwitches = modifierSwitches( userSettings.isSuperEnabled() );
+  }
+
+  /**
+   * Returns the text of every key label known before any key is pressed,
+   * so that the labels can be prepared in advance. Characters typed using
+   * keys without a known label are not included.
+   *
+   * @return The distinct label texts.
+   */
+  public static Set<String> getKnownLabels() {
+    final var labels = new LinkedHashSet<String>();
+
+    labels.addAll( RAW_CODES.values() );
+    labels.addAll( CHAR_CODES.values() );
+    labels.addAll( TRANSLATE.values() );
+
+    return labels;
+  }
+
+  /**
+   * Combines the regular key labels with the modifier key codes so that
+   * a single lookup resolves both the text and the modifier for a raw code.
+   *
+   * @param modifiers Raw key codes for the modifier keys.
+   * @return The compiled raw code lookup table.
+   */
+  private static Keymap<KeyLabel> compileRawCodes(
+    final Map<Integer, HandedSwitch> modifiers ) {
+    final var keymap = new Keymap<KeyLabel>();
+
+    RAW_CODES.forEach(
+      ( code, text ) -> keymap.put( code, new KeyLabel( text ) ) );
+
+    modifiers.forEach( ( code, modifier ) -> {
+      final var label = keymap.get( code );
+
+      keymap.put( code, label == null
+        ? new KeyLabel( null, modifier )
+        : label.withModifier( modifier ) );
+    } );
+
+    return keymap;
   }
 
   /**
@@ -333,48 +413,91 @@ public final class KeyboardListener
    */
   @Override
   public void nativeKeyTyped( final NativeKeyEvent e ) {
-    if( isRegular( e ) ) {
-      String key = getDisplayText( e.getKeyChar() );
+    setEventTime( e );
 
-      if( IS_OS_LINUX ) {
-        key = RAW_CODES.getOrDefault( e.getRawCode(), key );
-      }
+    final var raw = mRawCodes.get( e.getRawCode() );
 
-      dispatchRegular( mRegularHeld, key );
-      dispatchRegular( key, "" );
+    if( isRegular( raw ) ) {
+      final var key = IS_OS_LINUX && raw != null && raw.hasText()
+        ? raw
+        : getCharLabel( e.getKeyChar() );
+      final var labelId = key.getLabelId();
+
+      dispatchRegular( labelId, true );
+      dispatchRegular( labelId, false );
     }
   }
 
   @Override
   public void nativeKeyPressed( final NativeKeyEvent e ) {
-    dispatchModifiers( e, TRUE );
-
-    if( e.isActionKey() && isRegular( e ) && IS_OS_WINDOWS ) {
-      dispatchRegular( mRegularHeld, translate( e ) );
-    }
+    dispatchKey( e, TRUE );
   }
 
   @Override
   public void nativeKeyReleased( final NativeKeyEvent e ) {
-    dispatchModifiers( e, FALSE );
+    dispatchKey( e, FALSE );
+  }
 
-    if( e.isActionKey() && isRegular( e ) && IS_OS_WINDOWS ) {
-      dispatchRegular( translate( e ), "" );
+  /**
+   * Dispatches modifier key changes and, on Windows, action key changes.
+   *
+   * @param e       The native key event.
+   * @param pressed {@code true} means pressed, {@code false} means released.
+   */
+  private void dispatchKey( final NativeKeyEvent e, final boolean pressed ) {
+    setEventTime( e );
+
+    final var raw = mRawCodes.get( e.getRawCode() );
+
+    dispatchModifiers( raw, pressed );
+
+    if( e.isActionKey() && isRegular( raw ) && IS_OS_WINDOWS ) {
+      dispatchRegular( getKeyCodeLabel( e.getKeyCode() ).getLabelId(), pressed );
     }
   }
 
-  private String translate( final NativeKeyEvent e ) {
-    final var keyCode = e.getKeyCode();
-    final var text = NativeKeyEvent.getKeyText( keyCode );
-    return TRANSLATE.getOrDefault( text, text );
+  /**
+   * Returns the label for a typed character, creating it on first use.
+   *
+   * @param keyChar The character that was typed.
+   * @return The label descriptor for the character.
+   */
+  private KeyLabel getCharLabel( final char keyChar ) {
+    var label = mCharCodes.get( keyChar );
+
+    if( label == null ) {
+      label = new KeyLabel( String.valueOf( keyChar ) );
+      mCharCodes.put( keyChar, label );
+    }
+
+    return label;
+  }
+
+  /**
+   * Returns the label for an action key, creating it on first use.
+   *
+   * @param keyCode The virtual key code from the native key event.
+   * @return The label descriptor for the key code.
+   */
+  private KeyLabel getKeyCodeLabel( final int keyCode ) {
+    var label = mKeyCodes.get( keyCode );
+
+    if( label == null ) {
+      final var text = NativeKeyEvent.getKeyText( keyCode );
+
+      label = new KeyLabel( TRANSLATE.getOrDefault( text, text ) );
+      mKeyCodes.put( keyCode, label );
+    }
+
+    return label;
   }
 
   /**
    * Sets the initial state of the modifiers.
    */
   public void initModifiers() {
-    for( final var key : mModifiers.keySet() ) {
-      final var state = mModifiers.get( key );
+    for( final var key : mModifierSwitches ) {
+      final var state = isModifierDispatched( key );
 
       // All modifiers keys are "false" by default, so firing fake transition
       // events from "true" to "false" will cause the GUI to repaint with the
@@ -389,39 +512,38 @@ public final class KeyboardListener
    * the given event. This is necessary to ensure that both left and right
    * modifier keys return the same {@link HardwareSwitch} value.
    *
-   * @param e The event containing a raw key code to look up.
+   * @param raw The descriptor for the event's raw key code, may be
+   *            {@code null}.
    */
-  private void dispatchModifiers(
-    final NativeKeyEvent e, final boolean pressed ) {
-    final var rawCode = e.getRawCode();
-
-    final var key = modifierRawCodes.get( rawCode );
-
-    if( key != null ) {
-      if( pressed ) {
-        mHandedModifiers.add( key );
-      }
-      else {
-        mHandedModifiers.remove( key );
-      }
-
-      final var newHw = key.getHardwareSwitch();
-      final var counts = new HashMap<HardwareSwitch, Integer>();
-
-      mHandedModifiers.forEach(
-        modifier -> {
-          final var oldHw = modifier.getHardwareSwitch();
-          counts.put( oldHw, counts.getOrDefault( oldHw, 0 ) + 1 );
-        }
-      );
-
-      dispatchModifier( newHw, counts.get( newHw ) != null );
+  private void dispatchModifiers( final KeyLabel raw, final boolean pressed ) {
+    if( !isRegular( raw ) ) {
+      final var key = raw.getModifier();
+      final var handed = pressed
+        ? mHandedModifiers | key.getMask()
+        : mHandedModifiers & ~key.getMask();
+
+      mHandedModifiers = handed;
+
+      // The modifier is held while either its left or right key is held.
+      final var hwSwitch = key.getHardwareSwitch();
+      dispatchModifier( hwSwitch, (handed & hwSwitch.getMask()) != 0 );
     }
   }
 
-  private boolean isRegular( final NativeKeyEvent e ) {
-    final var rawCode = e.getRawCode();
-    return !modifierRawCodes.containsKey( rawCode );
+  /**
+   * Returns the physical state of all modifier keys as a bitmask, using the
+   * native hook library's handed modifier bits (e.g.,
+   * {@code SHIFT_L_MASK | CTRL_R_MASK}). Chords can be compared against the
+   * return value directly.
+   *
+   * @return The bitmask of modifier keys that are currently held.
+   */
+  public int getModifierMask() {
+    return mHandedModifiers;
+  }
+
+  private static boolean isRegular( final KeyLabel raw ) {
+    return raw == null || !raw.isModifier();
   }
 
   /**
@@ -437,29 +559,28 @@ public final class KeyboardListener
    */
   private void dispatchModifier(
     final HardwareSwitch key, final boolean newState ) {
-    final var oldState = mModifiers.get( key );
+    final var oldState = isModifierDispatched( key );
 
     // Only fire the event if the state has changed.
     tryFire( key, oldState, newState );
-    mModifiers.put( key, newState );
+
+    mModifiers = newState
+      ? mModifiers | key.getMask()
+      : mModifiers & ~key.getMask();
+  }
+
+  private boolean isModifierDispatched( final HardwareSwitch key ) {
+    return (mModifiers & key.getMask()) != 0;
   }
 
   /**
    * State for a regular (non-modifier) key has changed.
    *
-   * @param o Previous key value.
-   * @param n Current key value.
+   * @param labelId The interned key value to display.
+   * @param pressed {@code true} means pressed, {@code false} means released.
    */
-  private void dispatchRegular( final String o, final String n ) {
-    assert o != null;
-    assert n != null;
-
+  private void dispatchRegular( final int labelId, final boolean pressed ) {
     // Always fire the event, which permits double-key taps.
-    fire( KEY_REGULAR, o, n );
-    mRegularHeld = n;
-  }
-
-  private String getDisplayText( final char keyChar ) {
-    return CHAR_CODES.getOrDefault( keyChar, String.valueOf( keyChar ) );
+    fire( KEY_REGULAR, pressed, labelId );
   }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.listeners;
+
+import com.whitemagicsoftware.kmcaster.util.IntHashMap;
+
+/**
+ * Responsible for mapping key codes to values with a single array read for
+ * the most frequently typed keys. Codes from 0x00 to 0xFF (ASCII, Latin-1,
+ * and Windows virtual key codes) and from 0xFF00 to 0xFFFF (X11 function
+ * key symbols) are stored in dense arrays; all other codes are stored in an
+ * {@link IntHashMap}.
+ * <p>
+ * This class is not thread-safe; it is populated during construction and,
+ * when caching, from the native hook thread only.
+ * </p>
+ *
+ * @param <V> The type of value associated with each key code.
+ */
+final class Keymap<V> {
+  private static final int DENSE_SIZE = 0x100;
+  private static final int DENSE_MASK = DENSE_SIZE - 1;
+  private static final int KEYSYM_BASE = 0xFF00;
+
+  private final Object[] mLow = new Object[ DENSE_SIZE ];
+  private final Object[] mKeysyms = new Object[ DENSE_SIZE ];
+  private final IntHashMap<V> mSparse = new IntHashMap<>();
+
+  /**
+   * Returns the value associated with the given key code.
+   *
+   * @param code The key code to look up.
+   * @return The associated value, or {@code null} if there is no mapping.
+   */
+  @SuppressWarnings( "unchecked" )
+  V get( final int code ) {
+    final var page = code & ~DENSE_MASK;
+
+    if( page == 0 ) {
+      return (V) mLow[ code ];
+    }
+
+    if( page == KEYSYM_BASE ) {
+      return (V) mKeysyms[ code & DENSE_MASK ];
+    }
+
+    return mSparse.get( code );
+  }
+
+  /**
+   * Associates the given key code with the given value.
+   *
+   * @param code  The key code to map.
+   * @param value The value to associate with the key code.
+   */
+  void put( final int code, final V value ) {
+    assert value != null;
+
+    final var page = code & ~DENSE_MASK;
+
+    if( page == 0 ) {
+      mLow[ code ] = value;
+    }
+    else if( page == KEYSYM_BASE ) {
+      mKeysyms[ code & DENSE_MASK ] = value;
+    }
+    else {
+      mSparse.put( code, value );
+    }
+  }
+}
@@ -40,13 +40,14 @@ import java.util.Map;
 import static com.github.kwhat.jnativehook.mouse.NativeMouseWheelEvent.WHEEL_HORIZONTAL_DIRECTION;
 import static com.github.kwhat.jnativehook.mouse.NativeMouseWheelEvent.WHEEL_VERTICAL_DIRECTION;
 import static com.whitemagicsoftware.kmcaster.HardwareSwitch.*;
+import static com.whitemagicsoftware.kmcaster.SwitchEvent.intern;
 import static java.util.Map.entry;
 
 /**
  * Listens for all mouse events: clicks and mouse wheel scrolls.
  */
 public final class MouseListener
-  extends PropertyDispatcher<HardwareSwitch>
+  extends PropertyDispatcher
   implements NativeMouseInputListener, NativeMouseWheelListener {
 
   private final static Map<Pair<Integer, Integer>, HardwareSwitch>
@@ -57,11 +58,6 @@ public final class MouseListener
     entry( new Pair<>( WHEEL_HORIZONTAL_DIRECTION, 1 ), MOUSE_SCROLL_R )
   );
 
-  /**
-   * Most recently pressed non-mapped button value, empty signifies release.
-   */
-  private String mExtra = "";
-
   /**
    * Stores the state of button presses. The contents of the map reflect the
    * state of each switch, so the reference can be final but not its contents.
@@ -86,6 +82,8 @@ public final class MouseListener
   }
 
   public void nativeMouseWheelMoved( final NativeMouseWheelEvent e ) {
+    setEventTime( e );
+
     final var pair = new Pair<>( e.getWheelDirection(), e.getWheelRotation() );
     final var scrollSwitch = SCROLL_CODES.get( pair );
 
@@ -110,18 +108,15 @@ public final class MouseListener
    */
   private void dispatchButtonEvent(
     final NativeMouseEvent e, final boolean pressed ) {
+    setEventTime( e );
+
     final var hwSwitch = getMouseSwitch( e );
 
-    // Percolate the button number as a string for any undefined (unmapped)
+    // Percolate the button number as a label for any undefined (unmapped)
     // mouse buttons that are clicked. This enables additional mouse
     // buttons beyond two to appear, without an image representation.
     if( hwSwitch == MOUSE_EXTRA ) {
-      final var button = Integer.toString( e.getButton() );
-      final var n = pressed ? button : "";
-      final var o = pressed ? mExtra : button;
-
-      fire( hwSwitch, o, n );
-      mExtra = n;
+      fire( hwSwitch, pressed, intern( Integer.toString( e.getButton() ) ) );
     }
     else {
       tryFire( hwSwitch, mSwitches.get( hwSwitch ), pressed );
@@ -134,7 +129,9 @@ public final class MouseListener
     final var button = e.getButton();
 
     return switch( button ) {
-      case 1, 2, 3 -> HardwareSwitch.valueFrom( Integer.toString( button ) );
+      case 1 -> MOUSE_LEFT;
+      case 2 -> MOUSE_MIDDLE;
+      case 3 -> MOUSE_RIGHT;
       default -> MOUSE_EXTRA;
     };
   }
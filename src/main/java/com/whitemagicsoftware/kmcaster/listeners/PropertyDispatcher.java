@@ -27,76 +27,104 @@
  */
 package com.whitemagicsoftware.kmcaster.listeners;
 
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
-import java.beans.PropertyChangeSupport;
+import com.github.kwhat.jnativehook.NativeInputEvent;
+import com.whitemagicsoftware.kmcaster.HardwareSwitch;
+import com.whitemagicsoftware.kmcaster.LatencyStats;
+import com.whitemagicsoftware.kmcaster.SwitchEvent;
+
+import java.util.Arrays;
+
+import static com.whitemagicsoftware.kmcaster.LatencyStats.Stage.HOOK_TO_FIRE;
+import static com.whitemagicsoftware.kmcaster.SwitchEvent.NO_LABEL;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
- * Responsible for notifying its list of managed listeners when property
- * change events have occurred. The change events will only be fired if the
- * new value differs from the old value.
- *
- * @param <P> Type of property that, when changed, will try to issue a change
- *            event to any listeners.
+ * Responsible for notifying its list of managed listeners when hardware
+ * switch events have occurred. Events are encoded as primitive values (see
+ * {@link SwitchEvent}) so that no memory is allocated when firing.
  */
-public abstract class PropertyDispatcher<P> {
+public abstract class PropertyDispatcher {
   /**
-   * Calling {@link PropertyChangeSupport#getPropertyChangeListeners()} creates
-   * a new list every time. Calls to add listeners are only performed during
-   * setup, so this is a micro-optimization to avoid recreating the list on
-   * each event fired.
+   * Listeners are only added during setup, so the array is replaced rather
+   * than using a collection that would allocate an iterator on each event.
    */
-  private PropertyChangeListener[] mListeners;
+  private SwitchListener[] mListeners = new SwitchListener[ 0 ];
 
-  private final PropertyChangeSupport mDispatcher =
-      new PropertyChangeSupport( this );
+  /**
+   * Time that the native event being handled was raised, in milliseconds
+   * since the epoch, or zero if the event did not come from the native hook.
+   */
+  private long mWhen;
 
   /**
-   * Adds a new listener to the internal dispatcher. The dispatcher uses a map,
-   * so calling this multiple times for the same listener will not result in
-   * the same listener receiving multiple notifications for one event.
+   * Adds a new listener to the internal dispatcher. Calling this multiple
+   * times for the same listener will not result in the same listener
+   * receiving multiple notifications for one event.
    *
-   * @param listener The class to notify when property values change, a value
+   * @param listener The class to notify when switch states change, a value
    *                 of {@code null} will have no effect.
    */
-  public void addPropertyChangeListener(
-      final PropertyChangeListener listener ) {
-    mDispatcher.addPropertyChangeListener( listener );
-    mListeners = mDispatcher.getPropertyChangeListeners();
+  public void addSwitchListener( final SwitchListener listener ) {
+    if( listener != null && !Arrays.asList( mListeners ).contains( listener ) ) {
+      final var listeners = Arrays.copyOf( mListeners, mListeners.length + 1 );
+      listeners[ mListeners.length ] = listener;
+      mListeners = listeners;
+    }
+  }
+
+  /**
+   * Called at the start of each native event callback so that the time
+   * spent between the operating system raising the event and this class
+   * firing it can be measured.
+   *
+   * @param e The native event about to be dispatched.
+   */
+  protected void setEventTime( final NativeInputEvent e ) {
+    mWhen = e.getWhen();
   }
 
   /**
-   * Called to fire the property change with the two given values differ.
-   * Normally events for the same old and new value are swallowed silently,
-   * which prevents double-key presses from bubbling up. Tracking double-key
-   * presses is used to increment a counter that is displayed on the key when
-   * the user continually types the same regular key.
+   * Called to fire a switch state change, regardless of its previous state.
+   * Firing the same state repeatedly permits double-key presses to bubble
+   * up, which is used to increment a counter that is displayed on the key
+   * when the user continually types the same regular key.
    *
-   * @param p Property name that has changed.
-   * @param o Old property value.
-   * @param n New property value.
+   * @param p       The switch that has changed.
+   * @param pressed {@code true} means pressed, {@code false} means released.
+   * @param labelId The text to show on the switch, from
+   *                {@link SwitchEvent#intern(String)}.
    */
-  protected void fire( final P p, final String o, final String n ) {
-    final var pName = p.toString();
-    final var event = new PropertyChangeEvent( mDispatcher, pName, o, n );
+  protected void fire(
+    final HardwareSwitch p, final boolean pressed, final int labelId ) {
+    final var event = SwitchEvent.encode( p, pressed, labelId );
+    var nanos = 0L;
+
+    if( LatencyStats.isEnabled() ) {
+      nanos = System.nanoTime();
+
+      if( mWhen > 0 ) {
+        final var elapsed = System.currentTimeMillis() - mWhen;
+        LatencyStats.record(
+          HOOK_TO_FIRE, MILLISECONDS.toNanos( Math.max( 0, elapsed ) ) );
+      }
+    }
 
     for( final var listener : mListeners ) {
-      listener.propertyChange( event );
+      listener.switchChanged( event, nanos );
     }
   }
 
   /**
-   * Delegates to {@link #fire(P, String, String)} with {@link Boolean} values
-   * as strings. If the old and new values are the same, this will not send
-   * the event.
+   * Delegates to {@link #fire(HardwareSwitch, boolean, int)} without a label.
+   * If the old and new values are the same, this will not send the event.
    *
-   * @param p Property name that has changed.
-   * @param o Old property value.
-   * @param n New property value.
+   * @param p The switch that has changed.
+   * @param o Old switch state.
+   * @param n New switch state.
    */
-  protected void tryFire( final P p, final boolean o, final boolean n ) {
+  protected void tryFire( final HardwareSwitch p, final boolean o, final boolean n ) {
     if( o != n ) {
-      fire( p, Boolean.toString( o ), Boolean.toString( n ) );
+      fire( p, n, NO_LABEL );
     }
   }
 }
@@ -27,22 +27,128 @@
  */
 package com.whitemagicsoftware.kmcaster.ui;
 
+import com.whitemagicsoftware.kmcaster.util.LruCache;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.Objects;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
 
 /**
- * Responsible for changing a {@link JLabel}'s font size, dynamically.
+ * Responsible for changing a {@link JLabel}'s font size, dynamically. When
+ * given a {@link LabelCache}, the label reuses the fitted font and rendered
+ * text for anything it, or a label configured alike, has shown before.
  */
 public final class AutofitLabel extends JLabel {
+  /**
+   * Measures text the same way for every label; this is immutable.
+   */
+  private static final FontRenderContext FONT_RENDER_CONTEXT =
+    new FontRenderContext( new AffineTransform(), true, true );
+
+  /**
+   * Font size at which text is measured to estimate the size that fits.
+   */
+  private static final float REFERENCE_SIZE = 100;
+
+  /**
+   * Rendering hints for text rendered outside of painting, which are the
+   * defaults of a new image's graphics context; this is never modified.
+   */
+  private static final RenderingHints DEFAULT_HINTS =
+    new RenderingHints( null );
+
+  /**
+   * Maximum number of fitted fonts to remember.
+   */
+  private static final int FITTED_FONTS_SIZE = 1024;
+
+  /**
+   * Fonts sized to fit text within bounds, shared by all labels.
+   */
+  private static final LruCache<FitKey, Font> FITTED_FONTS =
+    new LruCache<>( FITTED_FONTS_SIZE, font -> 1 );
+
+  /**
+   * Identifies a fitted font by the font family and style, text, and
+   * bounds; the size of the font being fitted does not affect the result.
+   */
+  private static final class FitKey {
+    private final Font mFont;
+    private final String mText;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mHash;
+
+    private FitKey(
+      final Font font, final String text, final int width, final int height ) {
+      mFont = font;
+      mText = text == null ? "" : text;
+      mWidth = width;
+      mHeight = height;
+      mHash = Objects.hash(
+        font.getName(), font.getStyle(), mText, width, height );
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if( this == o ) {
+        return true;
+      }
+
+      if( !(o instanceof FitKey) ) {
+        return false;
+      }
+
+      final var that = (FitKey) o;
+
+      return mHash == that.mHash &&
+        mWidth == that.mWidth &&
+        mHeight == that.mHeight &&
+        mFont.getStyle() == that.mFont.getStyle() &&
+        mText.equals( that.mText ) &&
+        mFont.getName().equals( that.mFont.getName() );
+    }
+
+    @Override
+    public int hashCode() {
+      return mHash;
+    }
+  }
 
   /**
    * Lazily initialized to the parent's container's safe drawing area.
    */
   private Rectangle mParentBounds;
 
+  /**
+   * Shared renderings, or {@code null} to paint the text each time.
+   */
+  private final LabelCache mCache;
+
+  /**
+   * Most recently looked up rendering key, used to avoid a second lookup
+   * when painting after {@link #transform(int, int)}.
+   */
+  private LabelCache.Key mKey;
+
+  /**
+   * Rendering found for {@link #mKey}, or {@code null} if not yet rendered.
+   */
+  private LabelCache.Rendering mRendering;
+
+  /**
+   * Display of the label that this label was copied from, or {@code null}
+   * if this label is not a copy; see {@link #createTwin}.
+   */
+  private GraphicsConfiguration mConfiguration;
+
   /**
    * Constructs an instance of {@link AutofitLabel} that can rescale itself
    * relative to either the parent {@link Container} or a given dimension.
@@ -51,8 +157,23 @@ public final class AutofitLabel extends JLabel {
    * @param font The font to use when writing the text.
    */
   public AutofitLabel( final String text, final Font font ) {
+    this( text, font, null );
+  }
+
+  /**
+   * Constructs an instance of {@link AutofitLabel} that draws its text from
+   * the given cache, when possible.
+   *
+   * @param text  The text to write on the container's graphics context.
+   * @param font  The font to use when writing the text.
+   * @param cache Renderings shared with other labels, or {@code null} to
+   *              paint the text each time.
+   */
+  public AutofitLabel(
+    final String text, final Font font, final LabelCache cache ) {
     super( text );
     setFont( font );
+    mCache = cache;
   }
 
   /**
@@ -66,7 +187,9 @@ public final class AutofitLabel extends JLabel {
    */
   public void transform( final int width, final int height ) {
     setSize( width, height );
-    setFont( computeScaledFontNew() );
+
+    final var rendering = lookup();
+    setFont( rendering == null ? computeScaledFontNew() : rendering.getFont() );
 
     final var bounds = getParentBounds();
 
@@ -120,40 +243,302 @@ public final class AutofitLabel extends JLabel {
     transform( bounds.width, bounds.height );
   }
 
-  private Font computeScaledFontNew() {
-    final var font = getFont();
-    final var text = getText();
+  /**
+   * Scales the label's position and size by the given ratio, then fits the
+   * font to the new size. This keeps the label in place after its parent
+   * is resized, until the label is next transformed.
+   *
+   * @param ratio The new size of the parent relative to its old size.
+   */
+  public void rescale( final double ratio ) {
+    // The parent has been resized, so its safe area must be found again.
+    mParentBounds = null;
+
+    setBounds(
+      (int) Math.round( getX() * ratio ),
+      (int) Math.round( getY() * ratio ),
+      (int) Math.round( getWidth() * ratio ),
+      (int) Math.round( getHeight() * ratio ) );
+
+    final var rendering = lookup();
+    setFont( rendering == null ? computeScaledFontNew() : rendering.getFont() );
+  }
+
+  /**
+   * Creates a detached copy of this label showing the given text, sized as
+   * {@link #transform(float)} would size this label. The copy shares this
+   * label's caches, so preparing the copy prepares this label to show the
+   * same text. This must be called on the event dispatch thread, after this
+   * label has been added to its parent and the parent has been laid out.
+   *
+   * @param text   The text for the copy to show.
+   * @param colour The text colour for the copy.
+   * @param factor The scaling coefficient value, as for
+   *               {@link #transform(float)}.
+   * @return A label that is not part of any container.
+   */
+  public AutofitLabel createTwin(
+    final String text, final Color colour, final float factor ) {
+    final var twin = new AutofitLabel( text, getFont(), mCache );
+
+    twin.setForeground( colour );
+    twin.setHorizontalAlignment( getHorizontalAlignment() );
+    twin.setVerticalAlignment( getVerticalAlignment() );
+    twin.setSize( new ScalableDimension( getParentBounds() ).scale( factor ) );
+    twin.mConfiguration = getGraphicsConfiguration();
+
+    return twin;
+  }
+
+  /**
+   * Fits the font to this label's text and size, remembering the result for
+   * all labels. This may be called from any thread, provided the label is
+   * not being changed concurrently.
+   */
+  public void prefit() {
+    computeScaledFontNew();
+  }
+
+  /**
+   * Renders this label's text into its cache, at the given display scale,
+   * unless already cached. This must be called on the event dispatch thread.
+   *
+   * @param scale The ratio of device pixels to label pixels.
+   */
+  public void prerender( final double scale ) {
+    setFont( computeScaledFontNew() );
+
+    if( mCache != null && mCache.isEnabled() ) {
+      prepare( DEFAULT_HINTS, scale );
+    }
+  }
+
+  /**
+   * Adds the label's rendered text to a snapshot of the overlay, rendering
+   * the text first if it has not been drawn at the given scale. This must
+   * be called on the event dispatch thread.
+   *
+   * @param blits Receives the copy of the label's text, if visible.
+   * @param x     The label's horizontal position on the overlay.
+   * @param y     The label's vertical position on the overlay.
+   * @param scale The ratio of device pixels to label pixels.
+   */
+  public void snapshot(
+    final List<RenderSnapshot.Blit> blits,
+    final int x, final int y, final double scale ) {
+    if( !isVisible() ) {
+      return;
+    }
+
+    blits.add( prepare( DEFAULT_HINTS, scale ).toBlit( x, y ) );
+  }
+
+  /**
+   * Draws the label's text from the cache, rendering and caching it first if
+   * this text, colour, and size has not been drawn before.
+   *
+   * @param g The graphics context to draw upon.
+   */
+  @Override
+  protected void paintComponent( final Graphics g ) {
+    if( mCache == null || !mCache.isEnabled() ) {
+      super.paintComponent( g );
+      return;
+    }
+
+    final var g2d = (Graphics2D) g;
+    final var scale = g2d.getTransform().getScaleX();
+
+    prepare( g2d.getRenderingHints(), scale ).draw( g );
+  }
+
+  /**
+   * Returns the rendering of the label as currently configured, rendering
+   * the text if it has not been drawn at the given scale. New renderings
+   * are kept in the cache, if enabled.
+   *
+   * @param hints The rendering hints to use for the text.
+   * @param scale The ratio of device pixels to label pixels.
+   * @return The text, rendered with the current font.
+   */
+  private LabelCache.Rendering prepare(
+    final RenderingHints hints, final double scale ) {
+    var rendering = lookup();
+
+    if( rendering == null || rendering.getScale() != scale ) {
+      rendering = render( hints, scale );
+
+      if( mCache != null && mCache.isEnabled() ) {
+        mCache.put( mKey, rendering );
+        mRendering = rendering;
+      }
+    }
+
+    return rendering;
+  }
+
+  /**
+   * Returns the cached rendering of the label as currently configured. The
+   * cache is consulted only when the configuration has changed since the
+   * last lookup.
+   *
+   * @return The rendering, or {@code null} if there is none.
+   */
+  private LabelCache.Rendering lookup() {
+    if( mCache == null || !mCache.isEnabled() ) {
+      return null;
+    }
+
+    final var key = new LabelCache.Key( this );
+
+    if( !key.equals( mKey ) ) {
+      mKey = key;
+      mRendering = mCache.get( key );
+    }
+
+    return mRendering;
+  }
+
+  /**
+   * Paints the label's text into a new image, at the given resolution, then
+   * copies the drawn pixels into an image compatible with the display.
+   *
+   * @param hints The rendering hints to use for the text.
+   * @param scale The ratio of device pixels to label pixels.
+   * @return The text, rendered with the current font.
+   */
+  private LabelCache.Rendering render(
+    final RenderingHints hints, final double scale ) {
+    final var w = Math.max( 1, (int) Math.ceil( getWidth() * scale ) );
+    final var h = Math.max( 1, (int) Math.ceil( getHeight() * scale ) );
+    final var canvas = new BufferedImage( w, h, TYPE_INT_ARGB_PRE );
+    final var graphics = canvas.createGraphics();
+
+    // Mirror the context prepared by paint(), which the look and feel uses.
+    graphics.setRenderingHints( hints );
+    graphics.setFont( getFont() );
+    graphics.setColor( getForeground() );
+    graphics.scale( scale, scale );
+    super.paintComponent( graphics );
+    graphics.dispose();
+
+    final var bounds = visibleBounds( canvas );
+    final var image = createCompatibleImage(
+      Math.max( 1, bounds.width ), Math.max( 1, bounds.height ) );
+    final var copier = image.createGraphics();
+
+    copier.setComposite( AlphaComposite.Src );
+    copier.drawImage( canvas, -bounds.x, -bounds.y, null );
+    copier.dispose();
+
+    return new LabelCache.Rendering( getFont(), image, bounds, scale );
+  }
+
+  /**
+   * Creates a translucent image in the display's preferred format, so that
+   * it can be drawn without converting its pixels.
+   */
+  private BufferedImage createCompatibleImage( final int w, final int h ) {
+    final var gc = mConfiguration == null
+      ? getGraphicsConfiguration()
+      : mConfiguration;
+
+    return gc == null
+      ? new BufferedImage( w, h, TYPE_INT_ARGB_PRE )
+      : gc.createCompatibleImage( w, h, Transparency.TRANSLUCENT );
+  }
+
+  /**
+   * Returns the smallest area of the image containing non-transparent
+   * pixels.
+   */
+  private static Rectangle visibleBounds( final BufferedImage image ) {
+    final var w = image.getWidth();
+    final var h = image.getHeight();
+    final var alpha = image.getAlphaRaster();
+    final var row = new int[ w ];
+    int x1 = w, y1 = h, x2 = -1, y2 = -1;
+
+    for( int y = 0; y < h; y++ ) {
+      alpha.getSamples( 0, y, w, 1, 0, row );
+
+      for( int x = 0; x < w; x++ ) {
+        if( row[ x ] != 0 ) {
+          x1 = Math.min( x1, x );
+          x2 = Math.max( x2, x );
+          y1 = Math.min( y1, y );
+          y2 = y;
+        }
+      }
+    }
+
+    return x2 < 0
+      ? new Rectangle()
+      : new Rectangle( x1, y1, x2 - x1 + 1, y2 - y1 + 1 );
+  }
+
+  /**
+   * Finds the largest font that fits the label's text within its bounds.
+   * Results are remembered, so fitting the same text to the same bounds
+   * again is a single lookup. This is package-private so that it can be
+   * benchmarked in isolation.
+   *
+   * @return A font derived from the current font, sized to fit.
+   */
+  Font computeScaledFontNew() {
+    final var key = new FitKey( getFont(), getText(), getWidth(), getHeight() );
+    var font = FITTED_FONTS.get( key );
+
+    if( font == null ) {
+      font = fit( key );
+      FITTED_FONTS.put( key, font );
+    }
+
+    return font;
+  }
+
+  /**
+   * Sizes the font so that the text is as wide as the bounds, then searches
+   * the sizes up to that one for the largest whose text fits the height.
+   *
+   * @param key The font, text, and bounds to fit.
+   * @return A font derived from the key's font, sized to fit.
+   */
+  private static Font fit( final FitKey key ) {
+    final var font = key.mFont.deriveFont( REFERENCE_SIZE );
+    final var text = key.mText;
 
     // Without the - 1 the word Esc fails to appear.
-    final var dstWidthPx = getWidth() - 1;
-    final var dstHeightPx = getHeight();
+    final var dstWidthPx = key.mWidth - 1;
+    final var dstHeightPx = key.mHeight;
 
-    float shrink = 0;
+    final var widthText = getTextExtents( text, font ).getWidth();
+    final var widthRatio = dstWidthPx / widthText;
+    final var widthFontSize = (int) (REFERENCE_SIZE * widthRatio);
 
-    Rectangle2D newExtents;
-    Font newFont;
+    // The text height grows with the font size, so the sizes that fit the
+    // height are all those below some limit.
+    int lo = 1;
+    int hi = Math.max( lo, Math.min( widthFontSize, dstHeightPx ) );
 
-    do {
-      final var oldExtents = getTextExtents( text, font );
-      final var widthText = oldExtents.getWidth();
-      final var widthRatio = dstWidthPx / widthText;
-      final var widthFontSizeNew = (int) (font.getSize() * widthRatio);
-      final var widthFontSizeNorm =
-        (float) Math.min( widthFontSizeNew, dstHeightPx );
+    while( lo < hi ) {
+      final var mid = (lo + hi + 1) >>> 1;
+      final var extents = getTextExtents( text, font.deriveFont( (float) mid ) );
 
-      newFont = font.deriveFont( widthFontSizeNorm - shrink );
-      newExtents = getTextExtents( text, newFont );
-      shrink++;
+      if( extents.getHeight() > dstHeightPx ) {
+        hi = mid - 1;
+      }
+      else {
+        lo = mid;
+      }
     }
-    while( newExtents.getHeight() > dstHeightPx );
 
-    return newFont;
+    return font.deriveFont( (float) lo );
   }
 
-  private Rectangle2D getTextExtents( final String text, final Font font ) {
-    final var transform = new AffineTransform();
-    final var context = new FontRenderContext( transform, true, true );
-    return font.getStringBounds( text, context );
+  private static Rectangle2D getTextExtents(
+    final String text, final Font font ) {
+    return font.getStringBounds( text, FONT_RENDER_CONTEXT );
   }
 
   /**
@@ -28,6 +28,10 @@
 package com.whitemagicsoftware.kmcaster.ui;
 
 import java.awt.*;
+import java.util.Map;
+
+import static java.awt.RenderingHints.*;
+import static java.util.Map.entry;
 
 /**
  * Responsible for containing shared constants required by the GUI.
@@ -53,6 +57,23 @@ public final class Constants {
    */
   public static final Color COLOUR_KEY_UP = new Color( 0xE5, 0xE5, 0xE5 );
 
+  /**
+   * High quality rendering hints for rasterizing and drawing images. These
+   * are kept apart from the SVG rasterizer so that drawing pre-rasterized
+   * images does not load the SVG library.
+   */
+  public final static Map<Object, Object> RENDERING_HINTS = Map.ofEntries(
+    entry( KEY_ANTIALIASING, VALUE_ANTIALIAS_ON ),
+    entry( KEY_ALPHA_INTERPOLATION, VALUE_ALPHA_INTERPOLATION_QUALITY ),
+    entry( KEY_COLOR_RENDERING, VALUE_COLOR_RENDER_QUALITY ),
+    entry( KEY_DITHERING, VALUE_DITHER_DISABLE ),
+    entry( KEY_FRACTIONALMETRICS, VALUE_FRACTIONALMETRICS_ON ),
+    entry( KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR ),
+    entry( KEY_RENDERING, VALUE_RENDER_QUALITY ),
+    entry( KEY_STROKE_CONTROL, VALUE_STROKE_PURE ),
+    entry( KEY_TEXT_ANTIALIASING, VALUE_TEXT_ANTIALIAS_ON )
+  );
+
   /**
    * Private, empty constructor.
    */
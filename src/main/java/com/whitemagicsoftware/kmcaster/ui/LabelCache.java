@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.ui;
+
+import com.whitemagicsoftware.kmcaster.util.LruCache;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+
+/**
+ * Responsible for keeping rendered label text, so that a label showing text
+ * it has shown before is drawn as a single image, without fitting the font
+ * or laying out glyphs again. Labels that are configured alike share
+ * renderings. The least recently used renderings are discarded once the
+ * cache reaches its memory limit.
+ */
+public final class LabelCache {
+  /**
+   * Identifies a rendering by everything that affects the pixels of a
+   * label, except the font size, which is derived from the others.
+   */
+  static final class Key {
+    private final String mText;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mColour;
+    private final String mFontName;
+    private final int mFontStyle;
+    private final int mHorizontalAlign;
+    private final int mVerticalAlign;
+    private final int mHash;
+
+    Key( final AutofitLabel label ) {
+      final var text = label.getText();
+      final var font = label.getFont();
+
+      mText = text == null ? "" : text;
+      mWidth = label.getWidth();
+      mHeight = label.getHeight();
+      mColour = label.getForeground().getRGB();
+      mFontName = font.getName();
+      mFontStyle = font.getStyle();
+      mHorizontalAlign = label.getHorizontalAlignment();
+      mVerticalAlign = label.getVerticalAlignment();
+      mHash = Objects.hash(
+        mText, mWidth, mHeight, mColour, mFontName, mFontStyle,
+        mHorizontalAlign, mVerticalAlign );
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if( this == o ) {
+        return true;
+      }
+
+      if( !(o instanceof Key) ) {
+        return false;
+      }
+
+      final var that = (Key) o;
+
+      return mHash == that.mHash &&
+        mWidth == that.mWidth &&
+        mHeight == that.mHeight &&
+        mColour == that.mColour &&
+        mFontStyle == that.mFontStyle &&
+        mHorizontalAlign == that.mHorizontalAlign &&
+        mVerticalAlign == that.mVerticalAlign &&
+        mText.equals( that.mText ) &&
+        mFontName.equals( that.mFontName );
+    }
+
+    @Override
+    public int hashCode() {
+      return mHash;
+    }
+  }
+
+  /**
+   * Label text drawn into an image, with the font that was fitted to it.
+   * The image covers only the drawn pixels, so only those are copied when
+   * the label is painted.
+   */
+  static final class Rendering {
+    private final Font mFont;
+    private final BufferedImage mImage;
+    private final Rectangle mBounds;
+    private final double mScale;
+
+    /**
+     * Creates a rendering from label text drawn into an image.
+     *
+     * @param font   The font fitted to the label's text.
+     * @param image  The drawn pixels of the label.
+     * @param bounds The area of the label, in image pixels, that the image
+     *               covers.
+     * @param scale  The ratio of image pixels to label pixels.
+     */
+    Rendering(
+      final Font font,
+      final BufferedImage image,
+      final Rectangle bounds,
+      final double scale ) {
+      mFont = font;
+      mImage = image;
+      mBounds = bounds;
+      mScale = scale;
+    }
+
+    /**
+     * Draws the rendered text at its place within the label.
+     *
+     * @param g The label's graphics context.
+     */
+    void draw( final Graphics g ) {
+      final var b = mBounds;
+
+      if( mScale == 1 ) {
+        g.drawImage( mImage, b.x, b.y, null );
+      }
+      else {
+        toBlit( 0, 0 ).draw( (Graphics2D) g );
+      }
+    }
+
+    /**
+     * Describes drawing the rendered text within a label at the given
+     * location, in the same place as {@link #draw(Graphics)}.
+     *
+     * @param x The label's horizontal position on the overlay.
+     * @param y The label's vertical position on the overlay.
+     * @return A copy of the rendered pixels onto the overlay.
+     */
+    RenderSnapshot.Blit toBlit( final int x, final int y ) {
+      final var b = mBounds;
+
+      return new RenderSnapshot.Blit(
+        mImage, x + b.x / mScale, y + b.y / mScale, mScale,
+        0, 0, b.width, b.height );
+    }
+
+    Font getFont() {
+      return mFont;
+    }
+
+    /**
+     * Returns the ratio of image pixels to label pixels, which is greater
+     * than one on high-resolution displays.
+     *
+     * @return The scale used to render the image.
+     */
+    double getScale() {
+      return mScale;
+    }
+
+    private long getByteCount() {
+      return (long) mImage.getWidth() * mImage.getHeight() * Integer.BYTES;
+    }
+
+  }
+
+  private final LruCache<Key, Rendering> mRenderings;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param capacity The maximum number of bytes used by rendered images;
+   *                 zero disables caching.
+   */
+  public LabelCache( final long capacity ) {
+    mRenderings = new LruCache<>( capacity, Rendering::getByteCount );
+  }
+
+  Rendering get( final Key key ) {
+    return mRenderings.get( key );
+  }
+
+  void put( final Key key, final Rendering rendering ) {
+    mRenderings.put( key, rendering );
+  }
+
+  boolean isEnabled() {
+    return mRenderings.isEnabled();
+  }
+
+  /**
+   * Discards all renderings.
+   */
+  public void clear() {
+    mRenderings.clear();
+  }
+
+  @Override
+  public String toString() {
+    final var r = mRenderings;
+
+    return getClass().getSimpleName() + "{" +
+      "size=" + r.size() +
+      ", bytes=" + r.getWeight() +
+      ", hits=" + r.getHits() +
+      ", misses=" + r.getMisses() +
+      ", hitRatio=" + String.format( "%.3f", r.getHitRatio() ) +
+      ", evictions=" + r.getEvictions() +
+      '}';
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.awt.Toolkit.getDefaultToolkit;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Responsible for limiting how often components are painted. Components
+ * marked as dirty are painted together, at most once per frame, followed by
+ * a single display flush. Latency-critical changes, such as key presses, can
+ * bypass the frame cap and be painted immediately.
+ * <p>
+ * When a paint root is set, the bounds of a frame's dirty components are
+ * combined and the root paints that region once, rather than each
+ * component painting itself.
+ * </p>
+ * <p>
+ * All methods must be called from Swing's event dispatch thread.
+ * </p>
+ */
+public final class RenderScheduler {
+  /**
+   * Minimum time between coalesced paints, in nanoseconds.
+   */
+  private final long mFrameNanos;
+
+  /**
+   * Components waiting to be painted on the next frame.
+   */
+  private final List<JComponent> mDirty = new ArrayList<>();
+
+  /**
+   * Fires once at the start of the next frame, if components are dirty.
+   */
+  private final Timer mTimer;
+
+  /**
+   * When the most recent coalesced paint happened, in nanoseconds.
+   */
+  private long mLastFrame;
+
+  /**
+   * Notified after dirty components have been painted and flushed.
+   */
+  private Runnable mFlushListener = () -> {};
+
+  /**
+   * Paints the dirty regions, if not {@code null}.
+   */
+  private TranslucentPanel mPaintRoot;
+
+  /**
+   * Bounds of the dirty components within the paint root, which are kept
+   * separate so that components between them are not painted.
+   */
+  private final List<Rectangle> mRegions = new ArrayList<>();
+
+  /**
+   * Creates a scheduler that paints dirty components no more than the given
+   * number of times per second.
+   *
+   * @param maxFps The maximum frame rate, must be greater than zero.
+   */
+  public RenderScheduler( final int maxFps ) {
+    assert maxFps > 0;
+
+    mFrameNanos = SECONDS.toNanos( 1 ) / maxFps;
+    mTimer = new Timer( 0, ( event ) -> flush() );
+    mTimer.setRepeats( false );
+  }
+
+  /**
+   * Sets the action to run after each frame that painted dirty components,
+   * which can be used to measure how long changes waited to be shown.
+   *
+   * @param listener Called on the event dispatch thread after the display
+   *                 has been flushed.
+   */
+  public void setFlushListener( final Runnable listener ) {
+    assert listener != null;
+    mFlushListener = listener;
+  }
+
+  /**
+   * Sets the ancestor that paints all changes, such as a panel that
+   * composites its children offscreen.
+   *
+   * @param root The ancestor of all dirty components, or {@code null} to
+   *             paint each component individually.
+   */
+  public void setPaintRoot( final TranslucentPanel root ) {
+    mPaintRoot = root;
+  }
+
+  /**
+   * Requests that the given component be painted on the next frame. Marking
+   * the same component multiple times within a frame paints it once.
+   *
+   * @param component The component to paint.
+   */
+  public void markDirty( final JComponent component ) {
+    if( !mDirty.contains( component ) ) {
+      mDirty.add( component );
+    }
+
+    if( !mTimer.isRunning() ) {
+      final var wait = Math.max( 0, mFrameNanos - (nanoTime() - mLastFrame) );
+
+      // Round up so that the frame cap is never exceeded.
+      mTimer.setInitialDelay( (int) NANOSECONDS.toMillis( wait + 999_999 ) );
+      mTimer.start();
+    }
+  }
+
+  /**
+   * Paints the given component immediately, regardless of the frame cap.
+   *
+   * @param component The component to paint.
+   */
+  public void paintNow( final JComponent component ) {
+    mDirty.remove( component );
+
+    if( mPaintRoot == null ) {
+      paint( component );
+    }
+    else {
+      include( component );
+      paintRegions();
+    }
+
+    getDefaultToolkit().sync();
+  }
+
+  /**
+   * Paints all dirty components then flushes the display once.
+   */
+  private void flush() {
+    mLastFrame = nanoTime();
+
+    if( !mDirty.isEmpty() ) {
+      if( mPaintRoot == null ) {
+        // Indexed to avoid allocating an iterator each frame.
+        for( int i = 0; i < mDirty.size(); i++ ) {
+          paint( mDirty.get( i ) );
+        }
+      }
+      else {
+        for( int i = 0; i < mDirty.size(); i++ ) {
+          include( mDirty.get( i ) );
+        }
+
+        paintRegions();
+      }
+
+      mDirty.clear();
+      getDefaultToolkit().sync();
+      mFlushListener.run();
+    }
+  }
+
+  private void paint( final JComponent component ) {
+    component.paintImmediately(
+      0, 0, component.getWidth(), component.getHeight()
+    );
+  }
+
+  /**
+   * Adds the given component's bounds, relative to the paint root, to the
+   * regions that will be painted.
+   *
+   * @param component A descendant of the paint root.
+   */
+  private void include( final JComponent component ) {
+    final var bounds = SwingUtilities.convertRectangle(
+      component.getParent(), component.getBounds(), mPaintRoot );
+
+    if( !bounds.isEmpty() ) {
+      mRegions.add( bounds );
+    }
+  }
+
+  private void paintRegions() {
+    if( !mRegions.isEmpty() ) {
+      mPaintRoot.paintRegions( mRegions );
+      mRegions.clear();
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.ui;
+
+import java.awt.*;
+import java.util.List;
+
+import static com.whitemagicsoftware.kmcaster.ui.Constants.RENDERING_HINTS;
+
+/**
+ * Responsible for describing everything the overlay shows at one moment, as
+ * a list of images to copy into place. A snapshot is captured on the event
+ * dispatch thread and never changes afterwards, so that it can be drawn
+ * from any thread while Swing components continue to change.
+ */
+public final class RenderSnapshot {
+  /**
+   * Copies a region of an image onto the overlay. The source image must not
+   * change after the blit has been created.
+   */
+  public static final class Blit {
+    private final Image mImage;
+    private final double mX, mY;
+    private final double mScale;
+    private final int mSx, mSy, mSw, mSh;
+
+    /**
+     * Creates a copy of part of an image that has more pixels than the area
+     * it covers on a high-resolution display, so that each image pixel is
+     * copied onto exactly one display pixel.
+     *
+     * @param image The source of the pixels.
+     * @param x     The horizontal position on the overlay, in user space.
+     * @param y     The vertical position on the overlay, in user space.
+     * @param scale The ratio of image pixels to user space pixels.
+     * @param sx    The left edge of the region within the image.
+     * @param sy    The top edge of the region within the image.
+     * @param sw    The width of the region, in image pixels.
+     * @param sh    The height of the region, in image pixels.
+     */
+    public Blit(
+      final Image image,
+      final double x, final double y, final double scale,
+      final int sx, final int sy, final int sw, final int sh ) {
+      mImage = image;
+      mX = x;
+      mY = y;
+      mScale = scale;
+      mSx = sx;
+      mSy = sy;
+      mSw = sw;
+      mSh = sh;
+    }
+
+    /**
+     * Draws the region of the image at its place on the overlay.
+     *
+     * @param g The graphics context for the overlay.
+     */
+    public void draw( final Graphics2D g ) {
+      final var transform = g.getTransform();
+
+      g.translate( mX, mY );
+
+      if( mScale != 1 ) {
+        g.scale( 1 / mScale, 1 / mScale );
+      }
+
+      g.drawImage( mImage,
+                   0, 0, mSw, mSh,
+                   mSx, mSy, mSx + mSw, mSy + mSh, null );
+      g.setTransform( transform );
+    }
+  }
+
+  private final Blit[] mBlits;
+  private final int mWidth;
+  private final int mHeight;
+  private final long mNanos;
+
+  /**
+   * Creates a snapshot of the overlay.
+   *
+   * @param blits  The images to draw, from back to front.
+   * @param width  The overlay width, in user space.
+   * @param height The overlay height, in user space.
+   * @param nanos  When the change shown by this snapshot began, or zero if
+   *               not being measured.
+   */
+  public RenderSnapshot(
+    final List<Blit> blits, final int width, final int height,
+    final long nanos ) {
+    mBlits = blits.toArray( new Blit[ 0 ] );
+    mWidth = width;
+    mHeight = height;
+    mNanos = nanos;
+  }
+
+  /**
+   * Replaces the overlay's pixels with this snapshot, leaving areas not
+   * covered by any image transparent.
+   *
+   * @param g The graphics context for the overlay.
+   */
+  public void draw( final Graphics2D g ) {
+    g.setRenderingHints( RENDERING_HINTS );
+    g.setComposite( AlphaComposite.Clear );
+    g.fillRect( 0, 0, mWidth, mHeight );
+    g.setComposite( AlphaComposite.SrcOver );
+
+    for( final var blit : mBlits ) {
+      blit.draw( g );
+    }
+  }
+
+  /**
+   * Returns when the change shown by this snapshot began, for measuring how
+   * long it took to appear.
+   *
+   * @return A {@link System#nanoTime()} value, or zero if not measured.
+   */
+  public long getNanos() {
+    return mNanos;
+  }
+}
@@ -29,11 +29,71 @@ package com.whitemagicsoftware.kmcaster.ui;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static java.awt.AlphaComposite.Clear;
+import static java.awt.AlphaComposite.Src;
+import static java.awt.AlphaComposite.SrcOver;
+import static java.awt.Transparency.TRANSLUCENT;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
 
 /**
  * Renders a panel---and its borders---as a translucent colour.
+ * <p>
+ * When compositing, the panel keeps the whole overlay in one offscreen
+ * frame buffer. Child components are painted into the buffer, not onto the
+ * screen, and only where they intersect the region being repainted; the
+ * buffer is then shown using a single image draw. Children are made
+ * non-opaque so that Swing routes all of their repaints through the panel.
+ * Separate regions, such as two keys far apart, can be repainted into the
+ * buffer individually using {@link #paintRegions(List)}, so that the keys
+ * between them are not repainted.
+ * </p>
+ * <p>
+ * When a presenter is set, the panel draws nothing itself. Requests to
+ * paint the panel are passed on to the presenter, which draws the overlay
+ * by other means, such as from a dedicated rendering thread.
+ * </p>
  */
 public final class TranslucentPanel extends JPanel {
+  /**
+   * Notified once, after the panel is painted for the first time.
+   */
+  private Runnable mPaintListener;
+
+  /**
+   * Set to paint children into {@link #mBuffer} before showing it.
+   */
+  private boolean mCompositing;
+
+  /**
+   * Holds the panel's contents at the display's pixel scale, when
+   * compositing; created on first paint and whenever the size changes.
+   */
+  private BufferedImage mBuffer;
+
+  /**
+   * The display scale that {@link #mBuffer} was created for.
+   */
+  private double mBufferScale;
+
+  /**
+   * Set while painting a region that {@link #mBuffer} already holds, so that
+   * painting only copies the region from the buffer onto the screen.
+   */
+  private boolean mBufferCurrent;
+
+  /**
+   * Reused to combine the regions passed to {@link #paintRegions(List)}.
+   */
+  private final Rectangle mUnion = new Rectangle();
+
+  /**
+   * Notified in place of painting, if not {@code null}.
+   */
+  private Runnable mPresenter;
+
   public TranslucentPanel( final int hgap, final int vgap ) {
     final var layout = new FlowLayout();
 
@@ -46,10 +106,248 @@ public final class TranslucentPanel extends JPanel {
   @Override
   public void paintComponent( final Graphics g ) {
     final var g2 = (Graphics2D) g;
-    g2.setComposite( AlphaComposite.Clear );
-    g2.setColor( getBackground() );
     final var r = g2.getClipBounds();
-    g2.fillRect( r.x, r.y, r.width, r.height );
-    super.paintComponent( g2 );
+
+    if( mCompositing ) {
+      composite( g2, r );
+    }
+    else {
+      g2.setComposite( Clear );
+      g2.setColor( getBackground() );
+      g2.fillRect( r.x, r.y, r.width, r.height );
+      super.paintComponent( g2 );
+    }
+
+    firePaintListener();
+  }
+
+  /**
+   * Paints the panel and its children, unless a presenter is responsible
+   * for drawing them.
+   *
+   * @param g The graphics context for the screen.
+   */
+  @Override
+  public void paint( final Graphics g ) {
+    final var presenter = mPresenter;
+
+    if( presenter == null ) {
+      super.paint( g );
+    }
+    else {
+      presenter.run();
+      firePaintListener();
+    }
+  }
+
+  /**
+   * Children are painted by {@link #composite(Graphics2D, Rectangle)} when
+   * compositing, so they must not also be painted onto the screen.
+   *
+   * @param g The graphics context for the screen.
+   */
+  @Override
+  protected void paintChildren( final Graphics g ) {
+    if( !mCompositing ) {
+      super.paintChildren( g );
+    }
+  }
+
+  /**
+   * Changes whether the panel draws its children through an offscreen frame
+   * buffer. Call after all children have been added.
+   *
+   * @param compositing {@code true} to paint children into a frame buffer
+   *                    that is shown with a single image draw.
+   */
+  public void setCompositing( final boolean compositing ) {
+    mCompositing = compositing;
+    mBuffer = null;
+
+    // An opaque panel with transparent children is where Swing starts
+    // painting whenever any child is repainted.
+    setOpaque( compositing );
+
+    for( final var child : getComponents() ) {
+      if( child instanceof JComponent ) {
+        final var component = (JComponent) child;
+        component.setOpaque( !compositing );
+        component.setDoubleBuffered( !compositing );
+      }
+    }
+
+    repaint();
+  }
+
+  /**
+   * Frees the offscreen frame buffer, if any. The next paint creates a new
+   * buffer and draws every child into it.
+   */
+  public void releaseBuffer() {
+    mBuffer = null;
+  }
+
+  /**
+   * Paints the given regions immediately. When compositing, each region is
+   * repainted into the frame buffer on its own, then the smallest rectangle
+   * containing every region is copied from the buffer onto the screen in a
+   * single paint. This must be called on the event dispatch thread.
+   *
+   * @param regions The regions to update, in panel coordinates; none may be
+   *                empty.
+   */
+  public void paintRegions( final List<Rectangle> regions ) {
+    if( !mCompositing ) {
+      // Indexed to avoid allocating an iterator each frame.
+      for( int i = 0; i < regions.size(); i++ ) {
+        paintImmediately( regions.get( i ) );
+      }
+
+      return;
+    }
+
+    final var gc = getGraphicsConfiguration();
+    final var scale = gc == null ? 1 : gc.getDefaultTransform().getScaleX();
+    final var union = mUnion;
+
+    union.setBounds( regions.get( 0 ) );
+
+    for( int i = 1; i < regions.size(); i++ ) {
+      union.add( regions.get( i ) );
+    }
+
+    if( prepareBuffer( scale ) ) {
+      for( int i = 0; i < regions.size(); i++ ) {
+        render( regions.get( i ), scale );
+      }
+    }
+    else {
+      render( new Rectangle( 0, 0, getWidth(), getHeight() ), scale );
+    }
+
+    mBufferCurrent = true;
+
+    try {
+      paintImmediately( union );
+    } finally {
+      mBufferCurrent = false;
+    }
+  }
+
+  /**
+   * Repaints the children that intersect the given region into the frame
+   * buffer, unless already done, then shows that region of the frame
+   * buffer.
+   *
+   * @param g    The graphics context for the screen.
+   * @param clip The region to update, in panel coordinates.
+   */
+  private void composite( final Graphics2D g, final Rectangle clip ) {
+    final var scale = g.getTransform().getScaleX();
+
+    if( !prepareBuffer( scale ) ) {
+      // A new buffer is blank, so every child must be painted into it.
+      render( new Rectangle( 0, 0, getWidth(), getHeight() ), scale );
+    }
+    else if( !mBufferCurrent ) {
+      render( clip, scale );
+    }
+
+    g.setComposite( Src );
+    g.drawImage( mBuffer, 0, 0, getWidth(), getHeight(), null );
+  }
+
+  /**
+   * Creates the frame buffer if there is none, or if the panel's size or the
+   * display scale has changed.
+   *
+   * @param scale The ratio of display pixels to user space pixels.
+   * @return {@code false} if a new, blank buffer was created.
+   */
+  private boolean prepareBuffer( final double scale ) {
+    final var bw = (int) Math.ceil( getWidth() * scale );
+    final var bh = (int) Math.ceil( getHeight() * scale );
+
+    if( mBuffer == null || mBufferScale != scale ||
+      mBuffer.getWidth() != bw || mBuffer.getHeight() != bh ) {
+      mBuffer = createBuffer( bw, bh );
+      mBufferScale = scale;
+
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Clears the given region of the frame buffer, then repaints the children
+   * that intersect it.
+   *
+   * @param region The region to update, in panel coordinates.
+   * @param scale  The ratio of display pixels to user space pixels.
+   */
+  private void render( final Rectangle region, final double scale ) {
+    final var bg = mBuffer.createGraphics();
+
+    try {
+      bg.scale( scale, scale );
+      bg.clip( region );
+      bg.setComposite( Clear );
+      bg.fillRect( region.x, region.y, region.width, region.height );
+      bg.setComposite( SrcOver );
+
+      for( final var child : getComponents() ) {
+        if( child.isVisible() && child.getBounds().intersects( region ) ) {
+          final var cg = bg.create( child.getX(), child.getY(),
+                                    child.getWidth(), child.getHeight() );
+
+          try {
+            child.paint( cg );
+          } finally {
+            cg.dispose();
+          }
+        }
+      }
+    } finally {
+      bg.dispose();
+    }
+  }
+
+  private BufferedImage createBuffer( final int w, final int h ) {
+    final var gc = getGraphicsConfiguration();
+
+    return gc == null
+      ? new BufferedImage( w, h, TYPE_INT_ARGB_PRE )
+      : gc.createCompatibleImage( w, h, TRANSLUCENT );
+  }
+
+  /**
+   * Hands drawing over to the given presenter, which is called on the event
+   * dispatch thread whenever Swing would have painted the panel.
+   *
+   * @param presenter Draws the overlay, or {@code null} to have the panel
+   *                  paint itself.
+   */
+  public void setPresenter( final Runnable presenter ) {
+    mPresenter = presenter;
+  }
+
+  /**
+   * Sets an action to run after the panel has been painted for the first
+   * time, such as to measure how long the application took to appear.
+   *
+   * @param listener Called once, on the event dispatch thread.
+   */
+  public void setPaintListener( final Runnable listener ) {
+    mPaintListener = listener;
+  }
+
+  private void firePaintListener() {
+    final var listener = mPaintListener;
+
+    if( listener != null ) {
+      mPaintListener = null;
+      listener.run();
+    }
   }
 }
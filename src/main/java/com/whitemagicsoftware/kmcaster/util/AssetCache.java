@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static com.whitemagicsoftware.kmcaster.exceptions.Rethrowable.rethrow;
+
+/**
+ * Responsible for sharing expensive, immutable assets (such as rasterized
+ * images) among all their users. Each asset is created once, no matter how
+ * many threads request it concurrently, and is kept until every acquisition
+ * has been released.
+ *
+ * @param <K> The type of key that identifies an asset.
+ * @param <V> The type of asset.
+ */
+public final class AssetCache<K, V> {
+  /**
+   * Holds an asset that is loaded, or being loaded, and its reference count.
+   * The count is only changed while the map is updating the entry.
+   */
+  private static final class Entry<V> {
+    private final CompletableFuture<V> mValue = new CompletableFuture<>();
+    private final AtomicBoolean mClaimed = new AtomicBoolean();
+    private volatile int mReferences;
+  }
+
+  private final ConcurrentHashMap<K, Entry<V>> mEntries =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Returns the asset for the given key, creating it if no other user holds
+   * it. Threads that request an asset while it is being created wait for it,
+   * rather than creating a duplicate. Every call must be paired with a call
+   * to {@link #release(Object)}.
+   *
+   * @param key    Identifies the asset.
+   * @param loader Creates the asset when it is not cached; this is called
+   *               outside any lock, so different assets load concurrently.
+   * @return The shared asset.
+   */
+  public V acquire( final K key, final Function<K, V> loader ) {
+    final var entry = mEntries.compute( key, ( k, e ) -> {
+      final var result = e == null ? new Entry<V>() : e;
+      result.mReferences++;
+      return result;
+    } );
+
+    if( entry.mClaimed.compareAndSet( false, true ) ) {
+      try {
+        entry.mValue.complete( loader.apply( key ) );
+      } catch( final Throwable t ) {
+        // Let a later request try again, rather than caching the failure.
+        mEntries.remove( key, entry );
+        entry.mValue.completeExceptionally( t );
+      }
+    }
+
+    try {
+      return entry.mValue.join();
+    } catch( final CompletionException ex ) {
+      rethrow( ex.getCause() );
+      throw ex;
+    }
+  }
+
+  /**
+   * Releases one acquisition of the asset for the given key. The asset is
+   * discarded when no acquisitions remain.
+   *
+   * @param key Identifies the asset, as passed to {@link #acquire}.
+   */
+  public void release( final K key ) {
+    mEntries.computeIfPresent(
+      key, ( k, e ) -> --e.mReferences > 0 ? e : null );
+  }
+
+  /**
+   * Returns the number of acquisitions of the asset for the given key.
+   *
+   * @param key Identifies the asset.
+   * @return The reference count, or zero if the asset is not cached.
+   */
+  public int getReferences( final K key ) {
+    final var entry = mEntries.get( key );
+    return entry == null ? 0 : entry.mReferences;
+  }
+
+  /**
+   * Returns the number of distinct assets being held.
+   *
+   * @return The number of cached assets.
+   */
+  public int size() {
+    return mEntries.size();
+  }
+}
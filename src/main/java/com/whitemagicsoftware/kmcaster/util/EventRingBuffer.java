@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Responsible for handing events from exactly one producer thread to exactly
+ * one consumer thread without locks or per-event allocations. Events are
+ * encoded as primitive {@code long} values in slots that are allocated once,
+ * up front; the producer and consumer each own one monotonically increasing
+ * sequence number.
+ * <p>
+ * The native hook library dispatches all keyboard and mouse events on a
+ * single thread, which is the producer. Swing's event dispatch thread is the
+ * consumer.
+ * </p>
+ */
+public final class EventRingBuffer {
+  /**
+   * Receives events removed from the buffer.
+   */
+  @FunctionalInterface
+  public interface EventConsumer {
+    /**
+     * Called once for each event removed from the buffer, in order.
+     *
+     * @param event The event that was queued.
+     * @param nanos The timestamp that was queued with the event.
+     */
+    void accept( long event, long nanos );
+  }
+
+  /**
+   * Pre-allocated event slots, sized to a power of two.
+   */
+  private final long[] mSlots;
+
+  /**
+   * Timestamps for the events in {@link #mSlots}, at the same indexes.
+   */
+  private final long[] mTimes;
+
+  /**
+   * Used to convert a sequence number into a slot index.
+   */
+  private final int mMask;
+
+  /**
+   * Sequence number of the next slot to read, written only by the consumer.
+   */
+  private final AtomicLong mHead = new AtomicLong();
+
+  /**
+   * Sequence number of the next slot to write, written only by the producer.
+   */
+  private final AtomicLong mTail = new AtomicLong();
+
+  /**
+   * Largest number of queued events observed by the producer.
+   */
+  private volatile int mMaxDepth;
+
+  /**
+   * Number of times the producer found the buffer full and had to retry.
+   */
+  private volatile long mOverflows;
+
+  /**
+   * Number of events removed by the most recent call to {@link #drain}.
+   */
+  private volatile int mLastBatch;
+
+  /**
+   * Largest number of events removed by a single call to {@link #drain}.
+   */
+  private volatile int mMaxBatch;
+
+  /**
+   * Number of calls to {@link #drain} that removed at least one event.
+   */
+  private volatile long mBatches;
+
+  /**
+   * Creates a new buffer that can hold at least the given number of events.
+   *
+   * @param capacity The minimum number of slots, rounded up to the nearest
+   *                 power of two.
+   */
+  public EventRingBuffer( final int capacity ) {
+    assert capacity > 0;
+
+    final var size = Integer.highestOneBit( Math.max( 2, capacity ) - 1 ) << 1;
+
+    mSlots = new long[ size ];
+    mTimes = new long[ size ];
+    mMask = size - 1;
+  }
+
+  /**
+   * Appends an event to the buffer. This must only be called from the
+   * producer thread.
+   *
+   * @param event The event to append.
+   * @param nanos The time the event was raised, passed back when drained.
+   * @return {@code false} if the buffer is full and the event was not added.
+   */
+  public boolean offer( final long event, final long nanos ) {
+    final var tail = mTail.get();
+    final var depth = (int) (tail - mHead.get());
+
+    if( depth >= mSlots.length ) {
+      mOverflows++;
+      return false;
+    }
+
+    final var index = (int) tail & mMask;
+    mSlots[ index ] = event;
+    mTimes[ index ] = nanos;
+
+    // Publish the slot contents before the consumer can observe the new tail.
+    mTail.lazySet( tail + 1 );
+
+    if( depth + 1 > mMaxDepth ) {
+      mMaxDepth = depth + 1;
+    }
+
+    return true;
+  }
+
+  /**
+   * Removes all events that are in the buffer at the time of the call,
+   * passing each one to the given consumer, in order. This must only be
+   * called from the consumer thread.
+   *
+   * @param consumer Receives each event removed from the buffer.
+   * @return The number of events removed.
+   */
+  public int drain( final EventConsumer consumer ) {
+    final var tail = mTail.get();
+    var head = mHead.get();
+    final var count = (int) (tail - head);
+
+    while( head < tail ) {
+      final var index = (int) head & mMask;
+      final var event = mSlots[ index ];
+      final var nanos = mTimes[ index ];
+
+      mHead.lazySet( ++head );
+      consumer.accept( event, nanos );
+    }
+
+    if( count > 0 ) {
+      mLastBatch = count;
+      mBatches++;
+
+      if( count > mMaxBatch ) {
+        mMaxBatch = count;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Returns the number of events waiting to be drained.
+   *
+   * @return The current queue depth.
+   */
+  public int size() {
+    return (int) (mTail.get() - mHead.get());
+  }
+
+  /**
+   * Returns the number of events that the buffer can hold.
+   *
+   * @return The number of pre-allocated slots.
+   */
+  public int capacity() {
+    return mSlots.length;
+  }
+
+  public int getMaxDepth() {
+    return mMaxDepth;
+  }
+
+  public long getOverflows() {
+    return mOverflows;
+  }
+
+  public int getLastBatchSize() {
+    return mLastBatch;
+  }
+
+  public int getMaxBatchSize() {
+    return mMaxBatch;
+  }
+
+  /**
+   * Returns the mean number of events removed per non-empty drain.
+   *
+   * @return The average batch size, or zero if nothing has been drained.
+   */
+  public double getMeanBatchSize() {
+    final var batches = mBatches;
+    return batches == 0 ? 0 : (double) mHead.get() / batches;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" +
+      "depth=" + size() +
+      ", maxDepth=" + getMaxDepth() +
+      ", lastBatch=" + getLastBatchSize() +
+      ", maxBatch=" + getMaxBatchSize() +
+      ", meanBatch=" + String.format( "%.2f", getMeanBatchSize() ) +
+      ", overflows=" + getOverflows() +
+      '}';
+  }
+}
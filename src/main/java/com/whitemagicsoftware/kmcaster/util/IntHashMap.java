@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.util;
+
+/**
+ * Responsible for mapping primitive {@code int} keys to values without
+ * boxing keys or allocating memory on lookup. Collisions are resolved using
+ * open addressing with linear probing. Entries cannot be removed.
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @param <V> The type of value to associate with each key.
+ */
+public final class IntHashMap<V> {
+  /**
+   * Golden ratio multiplier used to spread sequential keys across slots.
+   */
+  private static final int HASH_MIX = 0x9E3779B9;
+
+  private int[] mKeys;
+  private Object[] mValues;
+  private int mMask;
+  private int mSize;
+
+  /**
+   * Creates an empty map.
+   */
+  public IntHashMap() {
+    this( 16 );
+  }
+
+  /**
+   * Creates an empty map that can hold the given number of entries without
+   * resizing.
+   *
+   * @param capacity The expected number of entries.
+   */
+  public IntHashMap( final int capacity ) {
+    allocate( Integer.highestOneBit( Math.max( 4, capacity * 2 ) - 1 ) << 1 );
+  }
+
+  /**
+   * Returns the value associated with the given key.
+   *
+   * @param key The key to look up.
+   * @return The associated value, or {@code null} if there is no mapping.
+   */
+  @SuppressWarnings( "unchecked" )
+  public V get( final int key ) {
+    final var keys = mKeys;
+    final var values = mValues;
+    final var mask = mMask;
+
+    for( int i = slot( key, mask ); ; i = (i + 1) & mask ) {
+      final var value = values[ i ];
+
+      if( value == null || keys[ i ] == key ) {
+        return (V) value;
+      }
+    }
+  }
+
+  /**
+   * Associates the given key with the given value, replacing any previous
+   * value associated with the key.
+   *
+   * @param key   The key to associate with a value.
+   * @param value The value to associate with the key, must not be
+   *              {@code null}.
+   */
+  public void put( final int key, final V value ) {
+    assert value != null;
+
+    // Keep the load factor at or below one half so that probes stay short.
+    if( (mSize + 1) * 2 > mValues.length ) {
+      resize();
+    }
+
+    insert( key, value );
+  }
+
+  /**
+   * Removes every entry, releasing the space that they occupied.
+   */
+  public void clear() {
+    allocate( 16 );
+  }
+
+  /**
+   * Returns the number of entries in the map.
+   *
+   * @return The number of keys that have an associated value.
+   */
+  public int size() {
+    return mSize;
+  }
+
+  private void insert( final int key, final Object value ) {
+    final var mask = mMask;
+    int i = slot( key, mask );
+
+    while( mValues[ i ] != null && mKeys[ i ] != key ) {
+      i = (i + 1) & mask;
+    }
+
+    if( mValues[ i ] == null ) {
+      mSize++;
+    }
+
+    mKeys[ i ] = key;
+    mValues[ i ] = value;
+  }
+
+  private void resize() {
+    final var keys = mKeys;
+    final var values = mValues;
+
+    allocate( values.length * 2 );
+
+    for( int i = 0; i < values.length; i++ ) {
+      if( values[ i ] != null ) {
+        insert( keys[ i ], values[ i ] );
+      }
+    }
+  }
+
+  private void allocate( final int slots ) {
+    mKeys = new int[ slots ];
+    mValues = new Object[ slots ];
+    mMask = slots - 1;
+    mSize = 0;
+  }
+
+  private static int slot( final int key, final int mask ) {
+    final var h = key * HASH_MIX;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Responsible for assigning a small, stable integer identifier to each
+ * distinct string. Identifiers can be passed between threads as primitives
+ * and converted back into the original string without allocating memory.
+ * <p>
+ * Identifiers are assigned sequentially, starting at zero, and are never
+ * reclaimed.
+ * </p>
+ */
+public final class InternTable {
+  /**
+   * Maps strings to their identifiers, read without locking.
+   */
+  private final Map<String, Integer> mIds = new ConcurrentHashMap<>();
+
+  /**
+   * Maps identifiers to their strings. The array is replaced when it grows;
+   * writing the reference publishes the newly added string to readers.
+   */
+  private volatile String[] mValues = new String[ 256 ];
+
+  /**
+   * Number of strings in the table, guarded by this instance's monitor.
+   */
+  private int mSize;
+
+  /**
+   * Returns the identifier for the given string, assigning a new identifier
+   * if the string has not been seen before.
+   *
+   * @param value The string to intern, must not be {@code null}.
+   * @return A non-negative identifier for the string.
+   */
+  public int intern( final String value ) {
+    assert value != null;
+
+    final var id = mIds.get( value );
+    return id == null ? add( value ) : id;
+  }
+
+  /**
+   * Returns the string that was assigned the given identifier.
+   *
+   * @param id A value returned from {@link #intern(String)}.
+   * @return The string associated with the identifier.
+   */
+  public String get( final int id ) {
+    return mValues[ id ];
+  }
+
+  /**
+   * Returns the number of distinct strings in the table.
+   *
+   * @return The number of identifiers assigned.
+   */
+  public synchronized int size() {
+    return mSize;
+  }
+
+  private synchronized int add( final String value ) {
+    // Another thread may have added the value since the unlocked lookup.
+    final var existing = mIds.get( value );
+
+    if( existing != null ) {
+      return existing;
+    }
+
+    final var id = mSize;
+    var values = mValues;
+
+    if( id == values.length ) {
+      values = Arrays.copyOf( values, id * 2 );
+    }
+
+    values[ id ] = value;
+    mValues = values;
+    mIds.put( value, id );
+    mSize++;
+
+    return id;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+/**
+ * Responsible for counting recorded values in a fixed amount of memory.
+ * Values are grouped into buckets whose widths grow with each power of two;
+ * within a power of two the buckets are equally wide (log-linear). Every
+ * reported percentile is within about 3% of the exact value.
+ * <p>
+ * Recording is lock-free and never allocates memory.
+ * </p>
+ */
+public final class LatencyHistogram {
+  /**
+   * Number of linear sub-buckets per power of two, as a power of two.
+   */
+  private static final int SUB_BITS = 5;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+
+  /**
+   * Enough buckets to hold any non-negative {@code long} value.
+   */
+  private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+  private final AtomicLongArray mCounts = new AtomicLongArray( BUCKETS );
+  private final AtomicLong mTotal = new AtomicLong();
+  private final AtomicLong mMax = new AtomicLong();
+
+  /**
+   * Adds a value to the histogram. Negative values are counted as zero.
+   *
+   * @param value The value to record.
+   */
+  public void record( final long value ) {
+    final var v = Math.max( 0, value );
+
+    mCounts.incrementAndGet( index( v ) );
+    mTotal.incrementAndGet();
+    mMax.accumulateAndGet( v, Math::max );
+  }
+
+  /**
+   * Returns the number of values recorded.
+   *
+   * @return The total count of all buckets.
+   */
+  public long getCount() {
+    return mTotal.get();
+  }
+
+  /**
+   * Returns the largest value recorded.
+   *
+   * @return The exact maximum value, or zero if nothing was recorded.
+   */
+  public long getMax() {
+    return mMax.get();
+  }
+
+  /**
+   * Returns the value below which the given percentage of recorded values
+   * fall, rounded up to the upper bound of the bucket that holds it.
+   *
+   * @param percentile A value between 0 and 100, inclusive.
+   * @return The value at the given percentile, or zero if nothing was
+   * recorded.
+   */
+  public long getValueAtPercentile( final double percentile ) {
+    final var total = getCount();
+
+    if( total == 0 ) {
+      return 0;
+    }
+
+    final var rank = Math.max( 1, (long) Math.ceil( percentile / 100 * total ) );
+    long seen = 0;
+
+    for( int i = 0; i < BUCKETS; i++ ) {
+      seen += mCounts.get( i );
+
+      if( seen >= rank ) {
+        return Math.min( upperBound( i ), getMax() );
+      }
+    }
+
+    return getMax();
+  }
+
+  /**
+   * Discards all recorded values.
+   */
+  public void reset() {
+    for( int i = 0; i < BUCKETS; i++ ) {
+      mCounts.set( i, 0 );
+    }
+
+    mTotal.set( 0 );
+    mMax.set( 0 );
+  }
+
+  private static int index( final long v ) {
+    if( v < SUB_COUNT ) {
+      return (int) v;
+    }
+
+    final var shift = 63 - numberOfLeadingZeros( v ) - SUB_BITS;
+    final var sub = (int) (v >>> shift) - SUB_COUNT;
+
+    return SUB_COUNT + shift * SUB_COUNT + sub;
+  }
+
+  private static long upperBound( final int index ) {
+    if( index < SUB_COUNT ) {
+      return index;
+    }
+
+    final var shift = (index - SUB_COUNT) / SUB_COUNT;
+    final var sub = (index - SUB_COUNT) % SUB_COUNT;
+    final var lower = (long) (SUB_COUNT + sub) << shift;
+
+    return lower + (1L << shift) - 1;
+  }
+}
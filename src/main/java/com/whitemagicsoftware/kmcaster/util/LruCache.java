@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.whitemagicsoftware.kmcaster.util;
+
+import java.util.LinkedHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Responsible for keeping the most recently used values up to a total
+ * weight (such as a number of bytes), discarding the least recently used
+ * values to make room for new ones. Lookups are counted so that the cache's
+ * effectiveness can be reported. This is thread-safe.
+ *
+ * @param <K> The type of key that identifies a value.
+ * @param <V> The type of value to cache.
+ */
+public final class LruCache<K, V> {
+  private final LinkedHashMap<K, V> mEntries =
+    new LinkedHashMap<>( 16, 0.75f, true );
+
+  private final long mCapacity;
+  private final ToLongFunction<V> mWeigher;
+
+  private long mWeight;
+  private long mHits;
+  private long mMisses;
+  private long mEvictions;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param capacity The maximum total weight of the cached values; zero
+   *                 disables caching.
+   * @param weigher  Computes the weight of a value; this must return the
+   *                 same weight each time it is called for the same value.
+   */
+  public LruCache( final long capacity, final ToLongFunction<V> weigher ) {
+    assert capacity >= 0;
+    assert weigher != null;
+
+    mCapacity = capacity;
+    mWeigher = weigher;
+  }
+
+  /**
+   * Returns the value for the given key, marking it as most recently used.
+   *
+   * @param key Identifies the value to find.
+   * @return The cached value, or {@code null} if it is not cached.
+   */
+  public synchronized V get( final K key ) {
+    final var value = mEntries.get( key );
+
+    if( value == null ) {
+      mMisses++;
+    }
+    else {
+      mHits++;
+    }
+
+    return value;
+  }
+
+  /**
+   * Caches the given value, evicting the least recently used values until
+   * the total weight is within capacity. Values heavier than the capacity
+   * are not cached.
+   *
+   * @param key   Identifies the value.
+   * @param value The value to cache.
+   */
+  public synchronized void put( final K key, final V value ) {
+    final var weight = mWeigher.applyAsLong( value );
+
+    if( weight > mCapacity ) {
+      return;
+    }
+
+    final var previous = mEntries.put( key, value );
+
+    if( previous != null ) {
+      mWeight -= mWeigher.applyAsLong( previous );
+    }
+
+    mWeight += weight;
+
+    final var iterator = mEntries.values().iterator();
+
+    while( mWeight > mCapacity ) {
+      mWeight -= mWeigher.applyAsLong( iterator.next() );
+      iterator.remove();
+      mEvictions++;
+    }
+  }
+
+  /**
+   * Discards all cached values, keeping the counters.
+   */
+  public synchronized void clear() {
+    mEntries.clear();
+    mWeight = 0;
+  }
+
+  /**
+   * Answers whether values will be cached.
+   *
+   * @return {@code false} if the capacity is zero.
+   */
+  public boolean isEnabled() {
+    return mCapacity > 0;
+  }
+
+  public synchronized int size() {
+    return mEntries.size();
+  }
+
+  public synchronized long getWeight() {
+    return mWeight;
+  }
+
+  public synchronized long getHits() {
+    return mHits;
+  }
+
+  public synchronized long getMisses() {
+    return mMisses;
+  }
+
+  public synchronized long getEvictions() {
+    return mEvictions;
+  }
+
+  /**
+   * Returns the fraction of lookups that found a cached value.
+   *
+   * @return A value between zero and one, or zero if there were no lookups.
+   */
+  public synchronized double getHitRatio() {
+    final var lookups = mHits + mMisses;
+    return lookups == 0 ? 0 : (double) mHits / lookups;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getClass().getSimpleName() + "{" +
+      "size=" + size() +
+      ", weight=" + getWeight() +
+      ", capacity=" + mCapacity +
+      ", hits=" + getHits() +
+      ", misses=" + getMisses() +
+      ", hitRatio=" + String.format( "%.3f", getHitRatio() ) +
+      ", evictions=" + getEvictions() +
+      '}';
+  }
+}